@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.whitesource.agent.api.ChecksumUtils;
+
+/**
+ * Compares the {@link ChecksumEngine} strategies with ChecksumUtils.calculateSHA1(File), which the extractors used
+ * before, and with memory mapping, for a small jar, a fat jar and a distribution archive. Files are read from the page
+ * cache after the first iteration, so this measures CPU and copying overhead rather than disk speed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChecksumEngineBenchmark
+{
+    private static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    @Param({ "65536", "16777216", "268435456" })
+    public long size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("checksum-benchmark", ".jar");
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try
+        {
+            for (long written = 0; written < size; written += chunk.length)
+            {
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public String checksumUtils() throws IOException
+    {
+        return ChecksumUtils.calculateSHA1(file);
+    }
+
+    @Benchmark
+    public String engine() throws IOException
+    {
+        return ChecksumEngine.calculateSha1(file);
+    }
+
+    @Benchmark
+    public String mapped() throws IOException, NoSuchAlgorithmException
+    {
+        return calculateSha1Mapped(file, MAPPED_REGION_SIZE);
+    }
+
+    @Benchmark
+    public String engineStream() throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return ChecksumEngine.calculateSha1(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Kept out of the plugin on purpose: memory mapping gained no wall time, while a mapped file stays locked on
+     * Windows until the mapping is garbage collected, e.g. failing the workspace cleanup or the next build replacing a
+     * SNAPSHOT jar, and a file truncated meanwhile crashes the JVM. Mapped regions are only released once garbage
+     * collected, hence they are limited in size, so large files don't exhaust the address space.
+     */
+    private static String calculateSha1Mapped(final File file, final long regionSize) throws IOException,
+            NoSuchAlgorithmException
+    {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            final FileChannel channel = in.getChannel();
+            final long fileSize = channel.size();
+            for (long position = 0; position < fileSize; position += regionSize)
+            {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(regionSize, fileSize - position));
+                digest.update(region);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return String.format("%040x", new BigInteger(1, digest.digest()));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+
+/**
+ * Measures complete freestyle extractions over a generated checkout: walking, matching and hashing. The size of the
+ * checkout can be chosen via <code>-p files=...</code>; files are small and read from the page cache after the first
+ * iteration, so this mostly measures per file overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GenericOssInfoExtractorBenchmark
+{
+    private static final String INCLUDES = "**/*.jar,**/*.war,**/*.zip";
+    private static final String EXCLUDES = "**/target/**";
+    private static final int MAX_FILE_SIZE = 64 * 1024;
+
+    @Param({ "1000", "10000" })
+    public int files;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    private File checkoutDirectory;
+    private File spillDirectory;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        final File root = File.createTempFile("extractor-benchmark", "");
+        root.delete();
+        checkoutDirectory = new File(root, "checkout");
+        spillDirectory = new File(root, "spill");
+
+        final Random random = new Random(42);
+        for (String relativePath : GlobMatcherBenchmark.generatePaths(files, random))
+        {
+            final byte[] content = new byte[1 + random.nextInt(MAX_FILE_SIZE)];
+            random.nextBytes(content);
+            FileUtils.writeByteArrayToFile(new File(checkoutDirectory, relativePath), content);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(checkoutDirectory.getParentFile());
+    }
+
+    @Benchmark
+    public int extract()
+    {
+        final GenericOssInfoExtractor extractor = new GenericOssInfoExtractor("benchmark", null, INCLUDES, EXCLUDES,
+                checkoutDirectory, threads);
+
+        return countDependencies(extractor);
+    }
+
+    @Benchmark
+    public int extractCompact()
+    {
+        final GenericOssInfoExtractor extractor = new GenericOssInfoExtractor("benchmark", null, INCLUDES, EXCLUDES,
+                checkoutDirectory, threads);
+        extractor.setCompactInventory(spillDirectory, CompactInventory.DEFAULT_SPILL_THRESHOLD);
+
+        return countDependencies(extractor);
+    }
+
+    private static int countDependencies(final GenericOssInfoExtractor extractor)
+    {
+        int dependencies = 0;
+        for (AgentProjectInfo projectInfo : extractor.extract())
+        {
+            dependencies += projectInfo.getDependencies().size();
+            if (projectInfo.getDependencies() instanceof CompactInventory)
+            {
+                ((CompactInventory) projectInfo.getDependencies()).close();
+            }
+        }
+
+        return dependencies;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the compiled {@link GlobMatcher} with matching one java.util.regex.Pattern per glob, as
+ * GenericOssInfoExtractor did before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GlobMatcherBenchmark
+{
+    private static final String[] DIRECTORIES = { "lib", "src", "main", "java", "target", "node_modules", "dist",
+            "module", "resources", "build" };
+    private static final String[] EXTENSIONS = { ".jar", ".war", ".zip", ".java", ".class", ".js", ".xml" };
+
+    @Param({ "4", "32" })
+    public int patterns;
+
+    @Param({ "10000" })
+    public int paths;
+
+    private List<String> includes;
+    private List<String> excludes;
+    private List<String> relativePaths;
+    private List<Pattern> includePatterns;
+    private List<Pattern> excludePatterns;
+    private GlobMatcher matcher;
+
+    @Setup
+    public void setUp()
+    {
+        includes = new ArrayList<String>();
+        excludes = new ArrayList<String>();
+        for (int i = 0; i < patterns; i++)
+        {
+            String directory = DIRECTORIES[i % DIRECTORIES.length];
+            includes.add(i % 2 == 0 ? directory + "/*.jar" : "**/" + directory + i + "/*.{jar,war,zip}");
+            excludes.add(i % 2 == 0 ? "**/" + directory + "/*-sources.jar" : directory + i + "/test/**");
+        }
+
+        includePatterns = new ArrayList<Pattern>();
+        for (String include : includes)
+        {
+            includePatterns.add(Pattern.compile(GlobMatcher.convertGlobToRegEx(include)));
+        }
+        excludePatterns = new ArrayList<Pattern>();
+        for (String exclude : excludes)
+        {
+            excludePatterns.add(Pattern.compile(GlobMatcher.convertGlobToRegEx(exclude)));
+        }
+        matcher = new GlobMatcher(includes, excludes);
+
+        relativePaths = generatePaths(paths, new Random(42));
+    }
+
+    static List<String> generatePaths(final int count, final Random random)
+    {
+        List<String> result = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            StringBuilder path = new StringBuilder();
+            int depth = 1 + random.nextInt(6);
+            for (int level = 0; level < depth; level++)
+            {
+                path.append(DIRECTORIES[random.nextInt(DIRECTORIES.length)]);
+                if (random.nextInt(4) == 0)
+                {
+                    path.append(random.nextInt(32));
+                }
+                path.append('/');
+            }
+            path.append("file").append(i).append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            result.add(path.toString());
+        }
+
+        return result;
+    }
+
+    @Benchmark
+    public int convertGlobToRegEx()
+    {
+        int length = 0;
+        for (String include : includes)
+        {
+            length += GlobMatcher.convertGlobToRegEx(include).length();
+        }
+        for (String exclude : excludes)
+        {
+            length += GlobMatcher.convertGlobToRegEx(exclude).length();
+        }
+
+        return length;
+    }
+
+    @Benchmark
+    public int regexLoop()
+    {
+        int matches = 0;
+        for (String path : relativePaths)
+        {
+            if (matchAny(path, includePatterns) && !matchAny(path, excludePatterns))
+            {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+
+    @Benchmark
+    public int globMatcher()
+    {
+        int matches = 0;
+        for (String path : relativePaths)
+        {
+            if (matcher.matches(path))
+            {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+
+    private static boolean matchAny(final String value, final List<Pattern> patterns)
+    {
+        for (Pattern pattern : patterns)
+        {
+            if (pattern.matcher(value).matches())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
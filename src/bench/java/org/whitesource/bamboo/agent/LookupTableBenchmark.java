@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.whitesource.bamboo.agent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Dependency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures matching the dependencies of a Maven module to its resolved artifacts, see
+ * MavenOssInfoExtractor.createLookupTable().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupTableBenchmark
+{
+    private static final String[] TYPES = { "jar", "jar", "jar", "war", "pom", null };
+
+    @Param({ "100", "2000" })
+    public int dependencies;
+
+    private List<Dependency> declaredDependencies;
+    private List<Artifact> artifacts;
+
+    @Setup
+    public void setUp()
+    {
+        final Random random = new Random(42);
+        declaredDependencies = new ArrayList<Dependency>(dependencies);
+        artifacts = new ArrayList<Artifact>(dependencies * 2);
+        for (int i = 0; i < dependencies; i++)
+        {
+            final Dependency dependency = new Dependency();
+            dependency.setGroupId("org.example.group" + (i % 50));
+            dependency.setArtifactId("artifact" + i);
+            dependency.setVersion("1." + (i % 10));
+            dependency.setType(TYPES[i % TYPES.length]);
+            dependency.setClassifier(i % 7 == 0 ? "tests" : null);
+            declaredDependencies.add(dependency);
+
+            // transitive artifacts outnumber the declared ones, and a few declared ones don't resolve
+            if (random.nextInt(20) != 0)
+            {
+                artifacts.add(createArtifact(dependency.getGroupId(), dependency.getArtifactId(),
+                        dependency.getVersion(), dependency.getType() == null ? "jar" : dependency.getType(),
+                        dependency.getClassifier()));
+            }
+            artifacts.add(createArtifact("org.example.transitive", "artifact" + i, "2.0", "jar", null));
+        }
+        Collections.shuffle(artifacts, random);
+    }
+
+    @Benchmark
+    public Map<Dependency, Artifact> createLookupTable()
+    {
+        return MavenOssInfoExtractor.createLookupTable(declaredDependencies, artifacts);
+    }
+
+    private static Artifact createArtifact(final String groupId, final String artifactId, final String version,
+            final String type, final String classifier)
+    {
+        return new DefaultArtifact(groupId, artifactId, version, "compile", type, classifier,
+                new DefaultArtifactHandler(type));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link ResourceUtils#getRelativePath(String, String, String)} for files of a checkout, relative to its root
+ * and to a sibling directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResourceUtilsBenchmark
+{
+    private static final String BASE_PATH = "/home/bamboo/xml-data/build-dir/PROJECT-PLAN-JOB1";
+
+    @Param({ "1000" })
+    public int paths;
+
+    private List<String> targetPaths;
+    private String siblingPath;
+
+    @Setup
+    public void setUp()
+    {
+        targetPaths = new ArrayList<String>(paths);
+        for (String relativePath : GlobMatcherBenchmark.generatePaths(paths, new Random(42)))
+        {
+            targetPaths.add(BASE_PATH + File.separator + relativePath);
+        }
+        siblingPath = BASE_PATH + "/module/target";
+    }
+
+    @Benchmark
+    public int relativeToRoot()
+    {
+        int length = 0;
+        for (String targetPath : targetPaths)
+        {
+            length += ResourceUtils.getRelativePath(targetPath, BASE_PATH, "/").length();
+        }
+
+        return length;
+    }
+
+    @Benchmark
+    public int relativeToSibling()
+    {
+        int length = 0;
+        for (String targetPath : targetPaths)
+        {
+            length += ResourceUtils.getRelativePath(targetPath, siblingPath, "/").length();
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.whitesource.bamboo.agent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures parsing the task's pattern lists and module token maps, as entered in the task configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WssUtilsBenchmark
+{
+    @Param({ "10", "1000" })
+    public int parameters;
+
+    private String parameterList;
+    private String parameterMap;
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder list = new StringBuilder();
+        StringBuilder map = new StringBuilder();
+        for (int i = 0; i < parameters; i++)
+        {
+            // mixes both separators, as users do
+            final String separator = i % 4 == 3 ? "\n" : ",";
+            list.append("module").append(i).append("/lib/*.jar").append(separator);
+            map.append("module").append(i).append('=').append(Integer.toHexString(i * 7919)).append(separator);
+        }
+        parameterList = list.toString();
+        parameterMap = map.toString();
+    }
+
+    @Benchmark
+    public List<String> splitParameters()
+    {
+        return WssUtils.splitParameters(parameterList);
+    }
+
+    @Benchmark
+    public Map<String, String> splitParametersMap()
+    {
+        return WssUtils.splitParametersMap(parameterMap);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Safely replaces files shared by the agents in the agent's data directory.
+ *
+ * Local agents run concurrently in one JVM and remote agents on the same host may share the directory, so a file is
+ * only replaced while holding both a lock within the JVM and a lock on a companion <code>.lock</code> file. Under
+ * that lock the entries saved by other agents since the file was loaded are merged, and the content is written to a
+ * unique temporary file which is then renamed over the original.
+ */
+public final class AgentDataFile
+{
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final ConcurrentMap<String, ReentrantLock> LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    /**
+     * Content of a data file.
+     */
+    public interface Content
+    {
+        /**
+         * Merges the entries of the file as currently saved. Called with the file locked, before {@link #write}.
+         *
+         * @param file
+         *            - the current file, which may not exist.
+         */
+        void merge(File file);
+
+        void write(OutputStream out) throws IOException;
+    }
+
+    private AgentDataFile()
+    {
+        // utility class
+    }
+
+    public static void save(final File file, final Content content) throws IOException
+    {
+        save(file, content, false);
+    }
+
+    /**
+     * @param ownerOnly
+     *            - true to make the file accessible to its owner only, e.g. since it may contain secrets.
+     */
+    public static void save(final File file, final Content content, final boolean ownerOnly) throws IOException
+    {
+        final File target = file.getAbsoluteFile();
+        final File directory = target.getParentFile();
+        // another agent may create the directory concurrently
+        if (!directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException("Can't create directory " + directory);
+        }
+
+        final ReentrantLock lock = lockFor(target);
+        lock.lock();
+        try
+        {
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(directory, target.getName()
+                    + LOCK_SUFFIX), "rw");
+            try
+            {
+                final FileLock fileLock = lockFile.getChannel().lock();
+                try
+                {
+                    content.merge(target);
+                    replace(target, content, ownerOnly);
+                }
+                finally
+                {
+                    fileLock.release();
+                }
+            }
+            finally
+            {
+                lockFile.close();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes a file or directory accessible to its owner only, as far as the platform supports it.
+     */
+    public static void restrictToOwner(final File file)
+    {
+        file.setReadable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(false, false);
+        file.setWritable(true, true);
+        if (file.isDirectory())
+        {
+            file.setExecutable(false, false);
+            file.setExecutable(true, true);
+        }
+    }
+
+    private static void replace(final File target, final Content content, final boolean ownerOnly)
+            throws IOException
+    {
+        final File tempFile = File.createTempFile(target.getName() + ".", TEMP_SUFFIX, target.getParentFile());
+        try
+        {
+            if (ownerOnly)
+            {
+                // restrict access before anything is written to the file
+                restrictToOwner(tempFile);
+            }
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+            try
+            {
+                content.write(out);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            if (!tempFile.renameTo(target))
+            {
+                // some platforms don't replace existing files on rename
+                target.delete();
+                if (!tempFile.renameTo(target))
+                {
+                    throw new IOException("Can't replace " + target);
+                }
+            }
+        }
+        finally
+        {
+            tempFile.delete();
+        }
+    }
+
+    private static ReentrantLock lockFor(final File file)
+    {
+        String path;
+        try
+        {
+            path = file.getCanonicalPath();
+        }
+        catch (IOException e)
+        {
+            path = file.getAbsolutePath();
+        }
+
+        final ReentrantLock lock = new ReentrantLock();
+        final ReentrantLock existing = LOCKS.putIfAbsent(path, lock);
+        return existing == null ? lock : existing;
+    }
+}
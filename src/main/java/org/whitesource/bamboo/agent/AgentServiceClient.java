@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.IOException;
+
+import org.whitesource.agent.client.WssServiceClientImpl;
+
+/**
+ * Service client telling requests the White Source service answered but rejected, e.g. because of an invalid API key,
+ * apart from transport failures, which the underlying client reports the same way.
+ * 
+ * A rejected request fails with a {@link ServiceRejectedException}, which is not worth retrying.
+ */
+public class AgentServiceClient extends WssServiceClientImpl
+{
+    public AgentServiceClient(final String serviceUrl)
+    {
+        super(serviceUrl);
+    }
+
+    @Override
+    protected String extractResultData(final String response) throws IOException
+    {
+        try
+        {
+            return super.extractResultData(response);
+        }
+        catch (Exception e)
+        {
+            // the service answered, so the failure is not due to the connection
+            throw new ServiceRejectedException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Finds the libraries embedded in WAR, EAR and ZIP archives, e.g. the jars in WEB-INF/lib, without extracting them.
+ * 
+ * Each library or nested archive of an archive is handed to the hashing pipeline as a task of its own, reading the
+ * entry through the shared ZipFile. Nested archives are streamed through a ZipInputStream, checksums of their
+ * libraries are calculated while the stream passes by. Archives are only descended into up to the maximum depth, the
+ * archive itself being depth one. Libraries are reported with a system path of the form
+ * <code>archive!/entry!/entry</code>.
+ */
+public class ArchiveScanner
+{
+    public static final int DEFAULT_MAX_DEPTH = 3;
+    public static final String ENTRY_SEPARATOR = "!/";
+
+    private static final String LOG_COMPONENT = "ArchiveScanner";
+    private static final Set<String> ARCHIVE_EXTENSIONS = ImmutableSet.of("war", "ear", "zip");
+    private static final String LIBRARY_EXTENSION = "jar";
+
+    private final Logger log = LoggerFactory.getLogger(ArchiveScanner.class);
+    private final int maxDepth;
+
+    public ArchiveScanner(final int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    public static boolean isArchive(final String name)
+    {
+        return ARCHIVE_EXTENSIONS.contains(FilenameUtils.getExtension(name).toLowerCase(Locale.ENGLISH));
+    }
+
+    public static boolean isLibrary(final String name)
+    {
+        return LIBRARY_EXTENSION.equals(FilenameUtils.getExtension(name).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Submits the libraries and nested archives of the given archive to the pipeline.
+     * 
+     * @return the futures of the libraries found per entry, in entry order.
+     */
+    public List<Future<List<DependencyInfo>>> scan(final File archive, final HashingPipeline pipeline)
+    {
+        final List<Future<List<DependencyInfo>>> results = new ArrayList<Future<List<DependencyInfo>>>();
+        final ZipFile zipFile;
+        try
+        {
+            zipFile = new ZipFile(archive);
+        }
+        catch (IOException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Can't open archive " + archive + ": " + e.getMessage()));
+            return results;
+        }
+
+        // the archive is closed by whoever finishes last, the submitting thread or one of the tasks
+        final AtomicInteger references = new AtomicInteger(1);
+        final String prefix = archive.getAbsolutePath() + ENTRY_SEPARATOR;
+        try
+        {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements())
+            {
+                final ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isScanned(entry.getName(), 2))
+                {
+                    continue;
+                }
+
+                references.incrementAndGet();
+                results.add(pipeline.submit(new Callable<List<DependencyInfo>>()
+                {
+                    @Override
+                    public List<DependencyInfo> call()
+                    {
+                        final List<DependencyInfo> libraries = new ArrayList<DependencyInfo>();
+                        InputStream in = null;
+                        try
+                        {
+                            in = zipFile.getInputStream(entry);
+                            scanEntry(prefix + entry.getName(), entry.getName(), in, 2, libraries);
+                        }
+                        catch (IOException e)
+                        {
+                            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Can't read " + prefix + entry.getName() + ": "
+                                    + e.getMessage()));
+                        }
+                        finally
+                        {
+                            IOUtils.closeQuietly(in);
+                            release(zipFile, references);
+                        }
+
+                        return libraries;
+                    }
+                }));
+            }
+        }
+        finally
+        {
+            release(zipFile, references);
+        }
+
+        return results;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * @param depth
+     *            - depth of the archive content if the entry is an archive itself.
+     */
+    private void scanEntry(final String path, final String name, final InputStream in, final int depth,
+            final List<DependencyInfo> libraries) throws IOException
+    {
+        if (isLibrary(name))
+        {
+            final DependencyInfo dependencyInfo = new DependencyInfo();
+            dependencyInfo.setSystemPath(path);
+            dependencyInfo.setArtifactId(FilenameUtils.getName(name));
+            dependencyInfo.setSha1(ChecksumEngine.calculateSha1(in));
+            libraries.add(dependencyInfo);
+            return;
+        }
+
+        // closing the nested stream must not close the entry it reads from
+        final ZipInputStream nested = new ZipInputStream(new CloseShieldInputStream(in));
+        try
+        {
+            ZipEntry entry;
+            while ((entry = nested.getNextEntry()) != null)
+            {
+                if (!entry.isDirectory() && isScanned(entry.getName(), depth + 1))
+                {
+                    scanEntry(path + ENTRY_SEPARATOR + entry.getName(), entry.getName(), nested, depth + 1,
+                            libraries);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // keep what was found so far, the enclosing archive may still be fine
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Can't read nested archive " + path + ": " + e.getMessage()));
+        }
+        finally
+        {
+            nested.close();
+        }
+    }
+
+    private boolean isScanned(final String name, final int depth)
+    {
+        return isLibrary(name) || (depth <= maxDepth && isArchive(name));
+    }
+
+    private static void release(final ZipFile zipFile, final AtomicInteger references)
+    {
+        if (references.decrementAndGet() == 0)
+        {
+            try
+            {
+                zipFile.close();
+            }
+            catch (IOException e)
+            {
+                // nothing left to read
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.whitesource.bamboo.agent;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
@@ -35,6 +37,8 @@ public abstract class BaseOssInfoExtractor
     protected String projectToken;
     protected List<String> includes;
     protected List<String> excludes;
+    protected ChecksumCache checksumCache;
+    protected ProjectInfoListener projectInfoListener;
     protected final Logger log = LoggerFactory.getLogger(BaseOssInfoExtractor.class);
 
     /**
@@ -51,6 +55,55 @@ public abstract class BaseOssInfoExtractor
 
     public abstract Collection<AgentProjectInfo> extract();
 
+    /**
+     * @param checksumCache
+     *            - cache consulted before calculating a checksum, null to always calculate.
+     */
+    public void setChecksumCache(final ChecksumCache checksumCache)
+    {
+        this.checksumCache = checksumCache;
+    }
+
+    public ChecksumCache getChecksumCache()
+    {
+        return checksumCache;
+    }
+
+    /**
+     * @param projectInfoListener
+     *            - listener to notify of each completed project while the extraction proceeds, null for none.
+     */
+    public void setProjectInfoListener(final ProjectInfoListener projectInfoListener)
+    {
+        this.projectInfoListener = projectInfoListener;
+    }
+
+    protected void notifyProjectInfoExtracted(final AgentProjectInfo projectInfo)
+    {
+        if (projectInfoListener != null)
+        {
+            projectInfoListener.projectInfoExtracted(projectInfo);
+        }
+    }
+
+    protected String calculateSha1(final File file) throws IOException
+    {
+        if (checksumCache == null)
+        {
+            return ChecksumEngine.calculateSha1(file);
+        }
+
+        final ChecksumCache.Key key = checksumCache.keyFor(file);
+        String sha1 = checksumCache.get(key);
+        if (sha1 == null)
+        {
+            sha1 = ChecksumEngine.calculateSha1(file);
+            checksumCache.put(key, sha1);
+        }
+
+        return sha1;
+    }
+
     public void logAgentProjectInfos(Collection<AgentProjectInfo> projectInfos)
     {
         log.info(WssUtils.logMsg(getLogComponent(), "----------------- dumping projectInfos -----------------"));
@@ -70,5 +123,18 @@ public abstract class BaseOssInfoExtractor
         log.info(WssUtils.logMsg(getLogComponent(), "----------------- dump finished -----------------"));
     }
 
+    /**
+     * Logs the number of dependencies per project instead of every dependency, e.g. for very large inventories.
+     */
+    public void logAgentProjectInfoSummary(Collection<AgentProjectInfo> projectInfos)
+    {
+        log.info(WssUtils.logMsg(getLogComponent(), "Total number of projects : " + projectInfos.size()));
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            log.info(WssUtils.logMsg(getLogComponent(), "Project coordinates: " + projectInfo.getCoordinates()
+                    + ", total # of dependencies: " + projectInfo.getDependencies().size()));
+        }
+    }
+
     protected abstract String getLogComponent();
 }
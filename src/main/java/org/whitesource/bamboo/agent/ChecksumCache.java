@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent SHA-1 cache, keyed by canonical path, size and last modification time of a file.
+ *
+ * Entries are evicted in least recently used order once the maximum number of entries is exceeded. The cache is stored
+ * in a compact binary file, which is replaced atomically on {@link #save()} and shared by the agents of a host. All
+ * methods are thread safe.
+ */
+public class ChecksumCache
+{
+    public static final String DEFAULT_CACHE_FILE = "sha1-cache.bin";
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final String LOG_COMPONENT = "ChecksumCache";
+    private static final int MAGIC = 0x57535343; // "WSSC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SHA1_LENGTH = 20;
+
+    private final Logger log = LoggerFactory.getLogger(ChecksumCache.class);
+    private final File cacheFile;
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private boolean modified;
+
+    public ChecksumCache(final File cacheFile, final int maxEntries)
+    {
+        this.cacheFile = cacheFile;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cache stored in the agent's data directory, loaded from disk if present.
+     */
+    public static ChecksumCache openDefault()
+    {
+        ChecksumCache cache = new ChecksumCache(new File(WssUtils.getAgentDataDirectory(), DEFAULT_CACHE_FILE),
+                DEFAULT_MAX_ENTRIES);
+        cache.load();
+
+        return cache;
+    }
+
+    /**
+     * Captures the cache key of a file. It should be taken before calculating the checksum, so that a file modified
+     * concurrently is not cached with a stale checksum.
+     *
+     * @return the key, or null if the file can't be resolved.
+     */
+    public Key keyFor(final File file)
+    {
+        try
+        {
+            return new Key(file.getCanonicalPath(), file.length(), file.lastModified());
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    public synchronized String get(final Key key)
+    {
+        CacheEntry entry = key == null ? null : entries.get(key.path);
+        if (entry != null && entry.size == key.size && entry.lastModified == key.lastModified)
+        {
+            hits.incrementAndGet();
+            return toHex(entry.sha1);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public synchronized void put(final Key key, final String sha1)
+    {
+        byte[] bytes = fromHex(sha1);
+        if (key != null && bytes != null)
+        {
+            entries.put(key.path, new CacheEntry(key.size, key.lastModified, bytes));
+            modified = true;
+        }
+    }
+
+    public synchronized void load()
+    {
+        entries.clear();
+        entries.putAll(read(cacheFile));
+        modified = false;
+    }
+
+    /**
+     * Saves the cache, merged with the entries other agents saved since it was loaded.
+     */
+    public synchronized void save() throws IOException
+    {
+        if (!modified)
+        {
+            return;
+        }
+
+        AgentDataFile.save(cacheFile, new AgentDataFile.Content()
+        {
+            @Override
+            public void merge(final File file)
+            {
+                final Map<String, CacheEntry> ours = new LinkedHashMap<String, CacheEntry>(entries);
+                entries.clear();
+                entries.putAll(read(file));
+                // ours are the most recently used; the later version of a file wins
+                for (Map.Entry<String, CacheEntry> mapEntry : ours.entrySet())
+                {
+                    final CacheEntry saved = entries.get(mapEntry.getKey());
+                    final CacheEntry entry = mapEntry.getValue();
+                    entries.put(mapEntry.getKey(), saved != null && saved.lastModified > entry.lastModified ? saved
+                            : entry);
+                }
+            }
+
+            @Override
+            public void write(final OutputStream stream) throws IOException
+            {
+                final DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                // least recently used first, so the order survives a reload
+                for (Map.Entry<String, CacheEntry> mapEntry : entries.entrySet())
+                {
+                    final CacheEntry entry = mapEntry.getValue();
+                    out.writeUTF(mapEntry.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                    out.write(entry.sha1);
+                }
+                out.flush();
+            }
+        });
+
+        modified = false;
+    }
+
+    public int getHits()
+    {
+        return hits.get();
+    }
+
+    public int getMisses()
+    {
+        return misses.get();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public File getCacheFile()
+    {
+        return cacheFile;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getHits() + " hits, " + getMisses() + " misses, " + size() + " entries";
+    }
+
+    /**
+     * @return the entries saved in the given file, least recently used first, empty if it can't be read.
+     */
+    private Map<String, CacheEntry> read(final File file)
+    {
+        final Map<String, CacheEntry> result = new LinkedHashMap<String, CacheEntry>();
+        if (!file.isFile())
+        {
+            return result;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring incompatible cache file " + file));
+                return result;
+            }
+
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long lastModified = in.readLong();
+                final byte[] sha1 = new byte[SHA1_LENGTH];
+                in.readFully(sha1);
+                result.put(path, new CacheEntry(size, lastModified, sha1));
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring unreadable cache file " + file + ": "
+                    + e.getMessage()));
+            result.clear();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return result;
+    }
+
+    private static byte[] fromHex(final String hex)
+    {
+        if (hex == null || hex.length() != SHA1_LENGTH * 2)
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[SHA1_LENGTH];
+        for (int i = 0; i < SHA1_LENGTH; i++)
+        {
+            final int high = Character.digit(hex.charAt(2 * i), 16);
+            final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0)
+            {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        return bytes;
+    }
+
+    private static String toHex(final byte[] bytes)
+    {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Identity of a file version as seen by the cache.
+     */
+    public static final class Key
+    {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        public Key(final String path, final long size, final long lastModified)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+    }
+
+    private static final class CacheEntry
+    {
+        private final long size;
+        private final long lastModified;
+        private final byte[] sha1;
+
+        private CacheEntry(final long size, final long lastModified, final byte[] sha1)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+        }
+    }
+}
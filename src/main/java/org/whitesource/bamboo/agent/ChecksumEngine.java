@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates SHA-1 checksums through a FileChannel, without copying file content to the heap.
+ *
+ * Files are read into a direct buffer reused by the calling thread, whatever their size. The result equals
+ * ChecksumUtils.calculateSHA1(File), i.e. lower case hex. All methods are thread safe.
+ */
+public final class ChecksumEngine
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SHA1_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private static final ThreadLocal<byte[]> HEAP_BUFFERS = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>()
+    {
+        @Override
+        protected MessageDigest initialValue()
+        {
+            try
+            {
+                return MessageDigest.getInstance(SHA1_ALGORITHM);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException("SHA-1 is not supported by this JVM!", e);
+            }
+        }
+    };
+
+    private ChecksumEngine()
+    {
+        // utility class
+    }
+
+    public static String calculateSha1(final File file) throws IOException
+    {
+        return calculateSha1Buffered(file);
+    }
+
+    public static String calculateSha1Buffered(final File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            return digestBuffered(in.getChannel());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the SHA-1 of the remaining content of the stream, e.g. an archive entry; the stream is not closed.
+     */
+    public static String calculateSha1(final InputStream in) throws IOException
+    {
+        final MessageDigest digest = DIGESTS.get();
+        final byte[] buffer = HEAP_BUFFERS.get();
+        digest.reset();
+        int count;
+        while ((count = in.read(buffer)) >= 0)
+        {
+            digest.update(buffer, 0, count);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static String digestBuffered(final FileChannel channel) throws IOException
+    {
+        final MessageDigest digest = DIGESTS.get();
+        final ByteBuffer buffer = BUFFERS.get();
+        digest.reset();
+        buffer.clear();
+        while (channel.read(buffer) >= 0)
+        {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(final byte[] bytes)
+    {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides the SHA-1 checksum of a file, e.g. by calculating it or by reading it from somewhere else.
+ */
+public interface ChecksumSource
+{
+    /**
+     * @return the lower case hex SHA-1 of the file, or null if this source can't provide it.
+     */
+    String getSha1(File file) throws IOException;
+}
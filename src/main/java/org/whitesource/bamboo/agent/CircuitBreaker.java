@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Circuit breaker failing calls to a degraded endpoint fast instead of letting every caller wait for it.
+ *
+ * The circuit opens after the given number of consecutive failures and rejects all calls for the open interval.
+ * Afterwards a single trial call is let through: its success closes the circuit, its failure opens it again. Only
+ * failures of the endpoint itself, like unreachable hosts or timeouts, should be recorded as failures. All methods are
+ * thread safe.
+ */
+public class CircuitBreaker
+{
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_INTERVAL = 60 * 1000L;
+
+    private static final ConcurrentMap<String, CircuitBreaker> SHARED = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private final int failureThreshold;
+    private final long openInterval;
+    private int consecutiveFailures;
+    private long openedAt = -1;
+    private boolean trialPending;
+
+    public CircuitBreaker(final int failureThreshold, final long openInterval)
+    {
+        this.failureThreshold = failureThreshold;
+        this.openInterval = openInterval;
+    }
+
+    /**
+     * @return the breaker shared by all tasks of this agent calling the given endpoint.
+     */
+    public static CircuitBreaker getShared(final String endpoint)
+    {
+        CircuitBreaker breaker = SHARED.get(endpoint);
+        if (breaker == null)
+        {
+            final CircuitBreaker newBreaker = new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_INTERVAL);
+            breaker = SHARED.putIfAbsent(endpoint, newBreaker);
+            if (breaker == null)
+            {
+                breaker = newBreaker;
+            }
+        }
+
+        return breaker;
+    }
+
+    /**
+     * @return whether a call may be made now; if so, its outcome must be recorded.
+     */
+    public synchronized boolean allowRequest()
+    {
+        if (openedAt < 0)
+        {
+            return true;
+        }
+        if (trialPending || System.currentTimeMillis() - openedAt < openInterval)
+        {
+            return false;
+        }
+
+        trialPending = true;
+        return true;
+    }
+
+    public synchronized void recordSuccess()
+    {
+        consecutiveFailures = 0;
+        openedAt = -1;
+        trialPending = false;
+    }
+
+    public synchronized void recordFailure()
+    {
+        consecutiveFailures++;
+        if (trialPending || consecutiveFailures >= failureThreshold)
+        {
+            openedAt = System.currentTimeMillis();
+            trialPending = false;
+        }
+    }
+
+    /**
+     * Records a call whose failure says nothing about the endpoint, e.g. a rejected request, so it neither closes nor
+     * opens the circuit. A pending trial call is given up, letting the next one through.
+     */
+    public synchronized void recordIgnored()
+    {
+        trialPending = false;
+    }
+
+    public synchronized boolean isOpen()
+    {
+        return openedAt >= 0;
+    }
+
+    /**
+     * @return milliseconds until a trial call is let through, 0 if the circuit is closed.
+     */
+    public synchronized long getRemainingOpenTime()
+    {
+        return openedAt < 0 ? 0 : Math.max(0, openedAt + openInterval - System.currentTimeMillis());
+    }
+}
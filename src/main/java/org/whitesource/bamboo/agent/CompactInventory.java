@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.SequenceInputStream;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+/**
+ * Dependencies of a project, kept as compact records instead of DependencyInfo objects.
+ * 
+ * A record consists of the index of the directory, the file name and the SHA-1 as 20 bytes. Once the records held in
+ * memory exceed the spill threshold, they are appended to a temporary file. DependencyInfo objects are only created
+ * while iterating, e.g. while an update request is serialized, so memory use doesn't grow with the number of
+ * dependencies, except for the table of distinct directories. Only the system path, artifact id (the file name) and
+ * SHA-1 of a dependency are kept. Appending while iterating isn't supported, {@link #close()} closes the iterators
+ * still reading the temporary file and deletes it. Temporary files left behind by crashed builds are deleted by
+ * {@link #deleteStaleSpillFiles(File, long)}.
+ */
+public class CompactInventory extends AbstractCollection<DependencyInfo> implements Closeable, Serializable
+{
+    public static final String SPILL_DIRECTORY = "inventories";
+    public static final int DEFAULT_SPILL_THRESHOLD = 8 * 1024 * 1024;
+    public static final long STALE_SPILL_FILE_AGE = 24L * 60 * 60 * 1000;
+
+    private static final long serialVersionUID = 1L;
+    private static final int SHA1_LENGTH = 20;
+    private static final byte NO_SHA1 = 0;
+    private static final byte BINARY_SHA1 = 1;
+    private static final byte TEXT_SHA1 = 2;
+    private static final String SPILL_PREFIX = "inventory-";
+    private static final String SPILL_SUFFIX = ".bin";
+
+    private final transient File spillDirectory;
+    private final transient int spillThreshold;
+    private final transient List<String> directories = new ArrayList<String>();
+    private final transient Map<String, Integer> directoryIndex = new HashMap<String, Integer>();
+    private final transient ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final transient DataOutputStream records = new DataOutputStream(buffer);
+    // streams of iterators reading the spill file and not done yet
+    private final transient List<Closeable> openStreams = new ArrayList<Closeable>();
+    private transient File spillFile;
+    private transient int size;
+    // incremented by close(), so iterators created before notice it
+    private transient int closeCount;
+
+    /**
+     * @param spillDirectory
+     *            - directory of the temporary file.
+     * @param spillThreshold
+     *            - number of bytes of records kept in memory.
+     */
+    public CompactInventory(final File spillDirectory, final int spillThreshold)
+    {
+        this.spillDirectory = spillDirectory;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public boolean add(final DependencyInfo dependencyInfo)
+    {
+        final String path = dependencyInfo.getSystemPath();
+        final int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)) + 1;
+        final String directory = path.substring(0, separator);
+        Integer index = directoryIndex.get(directory);
+        if (index == null)
+        {
+            index = directories.size();
+            directories.add(directory);
+            directoryIndex.put(directory, index);
+        }
+
+        try
+        {
+            records.writeInt(index);
+            records.writeUTF(path.substring(separator));
+            writeSha1(dependencyInfo.getSha1());
+            size++;
+            if (buffer.size() >= spillThreshold)
+            {
+                spill();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Can't spill inventory to " + spillFile, e);
+        }
+
+        return true;
+    }
+
+    @Override
+    public Iterator<DependencyInfo> iterator()
+    {
+        InputStream in = new ByteArrayInputStream(buffer.toByteArray());
+        if (spillFile != null)
+        {
+            try
+            {
+                in = new SequenceInputStream(new BufferedInputStream(new FileInputStream(spillFile)), in);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Can't read spilled inventory " + spillFile, e);
+            }
+        }
+
+        final RecordIterator iterator = new RecordIterator(new DataInputStream(in), size);
+        if (spillFile != null && iterator.hasNext())
+        {
+            openStreams.add(iterator.in);
+        }
+
+        return iterator;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return whether records have been written to disk.
+     */
+    public boolean isSpilled()
+    {
+        return spillFile != null;
+    }
+
+    @Override
+    public void close()
+    {
+        for (Closeable stream : openStreams)
+        {
+            IOUtils.closeQuietly(stream);
+        }
+        openStreams.clear();
+        closeCount++;
+        if (spillFile != null)
+        {
+            spillFile.delete();
+            spillFile = null;
+        }
+        buffer.reset();
+        size = 0;
+    }
+
+    private void spill() throws IOException
+    {
+        if (spillFile == null)
+        {
+            // another task may create the directory concurrently
+            if (!spillDirectory.mkdirs() && !spillDirectory.isDirectory())
+            {
+                throw new IOException("Can't create directory " + spillDirectory);
+            }
+            spillFile = File.createTempFile(SPILL_PREFIX, SPILL_SUFFIX, spillDirectory);
+        }
+
+        final FileOutputStream out = new FileOutputStream(spillFile, true);
+        try
+        {
+            buffer.writeTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        buffer.reset();
+    }
+
+    /**
+     * Deletes the temporary files in the given directory older than the given number of milliseconds, which were left
+     * behind by builds which didn't close their inventories, e.g. since the agent crashed.
+     * 
+     * @return the number of files deleted.
+     */
+    public static int deleteStaleSpillFiles(final File spillDirectory, final long maxAge)
+    {
+        final File[] files = spillDirectory.listFiles();
+        if (files == null)
+        {
+            return 0;
+        }
+
+        final long oldest = System.currentTimeMillis() - maxAge;
+        int deleted = 0;
+        for (File file : files)
+        {
+            if (file.getName().startsWith(SPILL_PREFIX) && file.getName().endsWith(SPILL_SUFFIX)
+                    && file.lastModified() < oldest && file.delete())
+            {
+                deleted++;
+            }
+        }
+
+        return deleted;
+    }
+
+    private void writeSha1(final String sha1) throws IOException
+    {
+        if (sha1 == null)
+        {
+            records.writeByte(NO_SHA1);
+        }
+        else if (sha1.length() == 2 * SHA1_LENGTH && isHex(sha1))
+        {
+            records.writeByte(BINARY_SHA1);
+            for (int i = 0; i < sha1.length(); i += 2)
+            {
+                records.writeByte((Character.digit(sha1.charAt(i), 16) << 4) | Character.digit(sha1.charAt(i + 1),
+                        16));
+            }
+        }
+        else
+        {
+            records.writeByte(TEXT_SHA1);
+            records.writeUTF(sha1);
+        }
+    }
+
+    private static boolean isHex(final String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Serialized as a plain list, e.g. when spooled.
+     */
+    private Object writeReplace()
+    {
+        return new ArrayList<DependencyInfo>(this);
+    }
+
+    private class RecordIterator implements Iterator<DependencyInfo>
+    {
+        private final DataInputStream in;
+        private final byte[] sha1 = new byte[SHA1_LENGTH];
+        private final int expectedCloseCount = closeCount;
+        private int remaining;
+
+        private RecordIterator(final DataInputStream in, final int count)
+        {
+            this.in = in;
+            this.remaining = count;
+            closeIfDone();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return remaining > 0;
+        }
+
+        @Override
+        public DependencyInfo next()
+        {
+            if (remaining <= 0)
+            {
+                throw new NoSuchElementException();
+            }
+            if (closeCount != expectedCloseCount)
+            {
+                throw new IllegalStateException("Inventory closed while iterating");
+            }
+
+            final DependencyInfo dependencyInfo = new DependencyInfo();
+            try
+            {
+                final String directory = directories.get(in.readInt());
+                final String name = in.readUTF();
+                dependencyInfo.setSystemPath(directory + name);
+                dependencyInfo.setArtifactId(name);
+                dependencyInfo.setSha1(readSha1());
+            }
+            catch (EOFException e)
+            {
+                throw new IllegalStateException("Spilled inventory " + spillFile + " is truncated", e);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Can't read spilled inventory " + spillFile, e);
+            }
+
+            remaining--;
+            closeIfDone();
+            return dependencyInfo;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private String readSha1() throws IOException
+        {
+            final byte type = in.readByte();
+            if (type == NO_SHA1)
+            {
+                return null;
+            }
+            if (type == TEXT_SHA1)
+            {
+                return in.readUTF();
+            }
+
+            in.readFully(sha1);
+            final char[] chars = new char[2 * SHA1_LENGTH];
+            for (int i = 0; i < SHA1_LENGTH; i++)
+            {
+                chars[2 * i] = Character.forDigit((sha1[i] >> 4) & 0xf, 16);
+                chars[2 * i + 1] = Character.forDigit(sha1[i] & 0xf, 16);
+            }
+            return new String(chars);
+        }
+
+        private void closeIfDone()
+        {
+            if (remaining <= 0)
+            {
+                IOUtils.closeQuietly(in);
+                openStreams.remove(in);
+            }
+        }
+    }
+}
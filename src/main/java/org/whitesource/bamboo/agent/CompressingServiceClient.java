@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.api.dispatch.ServiceRequest;
+import org.whitesource.agent.client.WssServiceException;
+
+/**
+ * Service client sending gzip compressed request bodies (Content-Encoding: gzip), which shrinks the JSON of large
+ * inventories considerably. Sizes and times of each request are logged.
+ */
+public class CompressingServiceClient extends AgentServiceClient
+{
+    public static final String GZIP_ENCODING = "gzip";
+
+    private static final String LOG_COMPONENT = "CompressingServiceClient";
+
+    private final Logger log = LoggerFactory.getLogger(CompressingServiceClient.class);
+
+    public CompressingServiceClient(final String serviceUrl)
+    {
+        super(serviceUrl);
+    }
+
+    @Override
+    protected <R> R service(final ServiceRequest<R> request) throws WssServiceException
+    {
+        final long startTime = System.currentTimeMillis();
+        try
+        {
+            return super.service(request);
+        }
+        finally
+        {
+            log.info(WssUtils.logMsg(LOG_COMPONENT, request.getClass().getSimpleName() + " took "
+                    + (System.currentTimeMillis() - startTime) + " ms"));
+        }
+    }
+
+    @Override
+    protected <R> HttpRequestBase createHttpRequest(final ServiceRequest<R> request) throws IOException
+    {
+        final HttpRequestBase httpRequest = super.createHttpRequest(request);
+        if (!(httpRequest instanceof HttpEntityEnclosingRequestBase))
+        {
+            return httpRequest;
+        }
+
+        final HttpEntityEnclosingRequestBase enclosingRequest = (HttpEntityEnclosingRequestBase) httpRequest;
+        final HttpEntity entity = enclosingRequest.getEntity();
+        if (entity == null)
+        {
+            return httpRequest;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final byte[] compressed = compress(entity);
+        final ByteArrayEntity compressedEntity = new ByteArrayEntity(compressed);
+        compressedEntity.setContentType(entity.getContentType());
+        compressedEntity.setContentEncoding(GZIP_ENCODING);
+        enclosingRequest.setEntity(compressedEntity);
+        log.info(WssUtils.logMsg(LOG_COMPONENT, "Compressed " + request.getClass().getSimpleName() + " from "
+                + entity.getContentLength() + " to " + compressed.length + " bytes in "
+                + (System.currentTimeMillis() - startTime) + " ms"));
+
+        return httpRequest;
+    }
+
+    /**
+     * @return the gzip compressed content of the given entity.
+     */
+    public static byte[] compress(final HttpEntity entity) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                (int) Math.min(Math.max(entity.getContentLength() / 4, 512), Integer.MAX_VALUE));
+        final GZIPOutputStream out = new GZIPOutputStream(bytes);
+        try
+        {
+            entity.writeTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return bytes.toByteArray();
+    }
+}
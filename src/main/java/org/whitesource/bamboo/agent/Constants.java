@@ -27,6 +27,8 @@ public final class Constants
     public static final String AGENT_VERSION = "1.0";
     public static final String SERVICE_URL_KEYWORD = "wss.url";
     public static final String DEFAULT_SERVICE_URL = "http://saas.whitesourcesoftware.com/agent";
+    public static final String AGENT_HOME_KEYWORD = "bamboo.home";
+    public static final String DATA_DIRECTORY = ".whitesource";
 
     /**
      * Private default constructor to avoid instantiation
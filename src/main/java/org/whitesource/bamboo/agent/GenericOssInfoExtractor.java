@@ -18,14 +18,26 @@ package org.whitesource.bamboo.agent;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
-import org.whitesource.agent.api.ChecksumUtils;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.agent.api.model.Coordinates;
 import org.whitesource.agent.api.model.DependencyInfo;
@@ -38,11 +50,27 @@ import org.whitesource.agent.api.model.DependencyInfo;
 public class GenericOssInfoExtractor extends BaseOssInfoExtractor
 {
     private static final String LOG_COMPONENT = "GenericExtractor";
+    private static final int DRAIN_SIZE = 1024;
 
     protected String projectName;
-    protected List<Pattern> includePatterns;
-    protected List<Pattern> excludePatterns;
+    protected GlobMatcher matcher;
     protected java.io.File checkoutDirectory;
+    protected int hashingThreads;
+    protected ScanManifest scanManifest;
+    protected ArchiveScanner archiveScanner;
+    protected boolean mergeDuplicates;
+    protected File spillDirectory;
+    protected int spillThreshold;
+    private List<Future<List<DependencyInfo>>> archiveContents;
+    private Map<Object, Future<DependencyInfo>> hashedFiles;
+    private Map<Object, ScannedArchive> scannedArchives;
+    private int linkedFiles;
+    private Collection<DependencyInfo> collected;
+    private Set<String> checksums;
+    private int mergedFiles;
+    private Map<String, ScanManifest.Entry> scannedEntries;
+    private String scanKey;
+    private String revision;
 
     /**
      * Constructor
@@ -51,24 +79,83 @@ public class GenericOssInfoExtractor extends BaseOssInfoExtractor
      */
     public GenericOssInfoExtractor(final String projectName, final String projectToken, final String includes,
             final String excludes, final java.io.File checkoutDirectory)
+    {
+        this(projectName, projectToken, includes, excludes, checkoutDirectory, 1);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param hashingThreads
+     *            - number of threads calculating checksums while the directory walk proceeds, 1 for inline hashing.
+     */
+    public GenericOssInfoExtractor(final String projectName, final String projectToken, final String includes,
+            final String excludes, final java.io.File checkoutDirectory, final int hashingThreads)
     {
         super(projectToken, includes, excludes);
 
         this.projectName = projectName;
         this.checkoutDirectory = checkoutDirectory;
+        this.hashingThreads = hashingThreads;
 
-        includePatterns = new ArrayList<Pattern>();
-        for (String pattern : this.includes)
-        {
-            includePatterns.add(Pattern.compile(convertGlobToRegEx(pattern)));
-        }
+        matcher = new GlobMatcher(this.includes, this.excludes);
+    }
 
-        excludePatterns = new ArrayList<Pattern>();
-        for (String pattern : this.excludes)
-        {
-            excludePatterns.add(Pattern.compile(convertGlobToRegEx(pattern)));
-        }
+    /**
+     * @param scanManifest
+     *            - manifest of the previous scan, see {@link #extractIncrementally}, null to scan the whole checkout.
+     */
+    public void setScanManifest(final ScanManifest scanManifest)
+    {
+        this.scanManifest = scanManifest;
+    }
 
+    public ScanManifest getScanManifest()
+    {
+        return scanManifest;
+    }
+
+    /**
+     * @param archiveScanner
+     *            - scanner reporting the libraries inside matching WAR, EAR and ZIP files in addition to the files
+     *            themselves, null to only report the files.
+     */
+    public void setArchiveScanner(final ArchiveScanner archiveScanner)
+    {
+        this.archiveScanner = archiveScanner;
+    }
+
+    public ArchiveScanner getArchiveScanner()
+    {
+        return archiveScanner;
+    }
+
+    /**
+     * @param mergeDuplicates
+     *            - whether files with identical content are reported once, under the path found first.
+     */
+    public void setMergeDuplicates(final boolean mergeDuplicates)
+    {
+        this.mergeDuplicates = mergeDuplicates;
+    }
+
+    public boolean isMergeDuplicates()
+    {
+        return mergeDuplicates;
+    }
+
+    /**
+     * Collects the dependencies into a {@link CompactInventory} while the checkout is still scanned, and only logs a
+     * summary of them. Hard and symbolic links aren't tracked in this mode, since that requires remembering every
+     * file.
+     * 
+     * @param spillDirectory
+     *            - directory to spill the inventory to, null to keep all dependencies in memory.
+     */
+    public void setCompactInventory(final File spillDirectory, final int spillThreshold)
+    {
+        this.spillDirectory = spillDirectory;
+        this.spillThreshold = spillThreshold;
     }
 
     @Override
@@ -84,7 +171,7 @@ public class GenericOssInfoExtractor extends BaseOssInfoExtractor
         projectInfo.setCoordinates(new Coordinates(null, projectName, null));
         projectInfo.setProjectToken(projectToken);
 
-        if (includePatterns.isEmpty())
+        if (includes.isEmpty())
         {
             log.error(WssUtils.logMsg(LOG_COMPONENT, "No include patterns defined. Failing."));
         }
@@ -93,190 +180,458 @@ public class GenericOssInfoExtractor extends BaseOssInfoExtractor
             log.info(WssUtils.logMsg(LOG_COMPONENT, "Including files matching:\r" + StringUtils.join(includes, "\r")));
             log.info(WssUtils.logMsg(LOG_COMPONENT, "Exluding files matching:\r" + StringUtils.join(excludes, "\r")));
 
-            extractOssInfo(checkoutDirectory, projectInfo.getDependencies());
+            log.info(WssUtils.logMsg(LOG_COMPONENT, "Hashing threads: " + hashingThreads));
+            if (archiveScanner != null)
+            {
+                log.info(WssUtils.logMsg(LOG_COMPONENT, "Scanning archives up to depth "
+                        + archiveScanner.getMaxDepth()));
+            }
+
+            HashingPipeline pipeline = new HashingPipeline(hashingThreads);
+            try
+            {
+                // futures are kept in walk order, so the result order doesn't depend on thread scheduling
+                List<Future<DependencyInfo>> pending = new ArrayList<Future<DependencyInfo>>();
+                archiveContents = new ArrayList<Future<List<DependencyInfo>>>();
+                hashedFiles = spillDirectory == null ? new HashMap<Object, Future<DependencyInfo>>() : null;
+                scannedArchives = spillDirectory == null ? new HashMap<Object, ScannedArchive>() : null;
+                linkedFiles = 0;
+                if (spillDirectory != null)
+                {
+                    projectInfo.setDependencies(new CompactInventory(spillDirectory, spillThreshold));
+                }
+                collected = projectInfo.getDependencies();
+                checksums = mergeDuplicates ? new HashSet<String>() : null;
+                mergedFiles = 0;
+                if (scanManifest != null)
+                {
+                    extractIncrementally(pipeline, pending);
+                }
+                else
+                {
+                    extractOssInfo(checkoutDirectory, pipeline, pending);
+                }
+
+                if (linkedFiles > 0)
+                {
+                    log.info(WssUtils.logMsg(LOG_COMPONENT, "Skipped reading " + linkedFiles
+                            + " hard or symbolic links to files read already"));
+                }
+
+                drain(pending, pending.size());
+                for (Future<List<DependencyInfo>> future : archiveContents)
+                {
+                    for (DependencyInfo dependencyInfo : HashingPipeline.await(future))
+                    {
+                        addDependencyInfo(dependencyInfo);
+                    }
+                }
+                if (mergeDuplicates)
+                {
+                    log.info(WssUtils.logMsg(LOG_COMPONENT, "Merged " + mergedFiles + " files with identical content"));
+                }
+
+                if (scanManifest != null)
+                {
+                    scanManifest.update(scannedEntries, scanKey, revision);
+                }
+            }
+            finally
+            {
+                pipeline.shutdown();
+            }
         }
 
-        logAgentProjectInfos(projectInfos);
+        if (spillDirectory == null)
+        {
+            logAgentProjectInfos(projectInfos);
+        }
+        else
+        {
+            logAgentProjectInfoSummary(projectInfos);
+        }
+        notifyProjectInfoExtracted(projectInfo);
 
         return projectInfos;
     }
 
-    private void extractOssInfo(final File root, final Collection<DependencyInfo> dependencyInfos)
+    private void extractOssInfo(final File root, final HashingPipeline pipeline,
+            final List<Future<DependencyInfo>> dependencyInfos)
     {
-        extractOssInfo(root, root, dependencyInfos);
+        if (!root.isDirectory())
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Not a directory: " + root.getPath()));
+            return;
+        }
+
+        ScanVisitor visitor = new ScanVisitor(root, pipeline, dependencyInfos);
+        try
+        {
+            Files.walkFileTree(root.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
+        }
+        catch (IOException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Scanning " + root.getPath() + " failed: " + e.getMessage()));
+        }
+
+        log.info(WssUtils.logMsg(LOG_COMPONENT, "Scanned " + visitor.directories + " directories and "
+                + visitor.files + " files, skipped " + visitor.prunedDirectories
+                + " directories no pattern can match (" + matcher + ")"));
     }
 
-    private void extractOssInfo(final File absoluteRoot, final File root,
-            final Collection<DependencyInfo> dependencyInfos)
+    /**
+     * Scans only what may have changed since the scan recorded in the manifest.
+     * 
+     * In a git working tree whose commit of the previous scan is known, only the files changed since then as well as
+     * untracked and ignored files are looked at; unchanged tracked files are taken from the manifest without touching
+     * them. Otherwise the checkout is walked as usual. Either way, files with the size and modification time recorded
+     * in the manifest keep their checksum. The manifest is replaced by the result once all checksums are known.
+     */
+    private void extractIncrementally(final HashingPipeline pipeline, final List<Future<DependencyInfo>> pending)
     {
-        final File[] files = root.listFiles();
-        if (files == null)
+        final GitWorkingTree workingTree = GitWorkingTree.open(checkoutDirectory);
+        scanKey = StringUtils.join(includes, ",") + "|" + StringUtils.join(excludes, ",");
+        revision = workingTree == null ? null : workingTree.getHead();
+        scannedEntries = new ConcurrentHashMap<String, ScanManifest.Entry>();
+
+        if (!scanKey.equals(scanManifest.getScanKey()))
         {
-            return;
+            // scanned with other patterns, none of the previous results can be trusted to be complete
+            scanManifest.update(new HashMap<String, ScanManifest.Entry>(), null, null);
         }
 
-        for (File file : files)
+        Set<String> changedPaths = null;
+        if (revision != null && scanManifest.getRevision() != null)
         {
-            if (file.isFile())
-            {
-                final String path = FilenameUtils.normalize(
-                        ResourceUtils.getRelativePath(file.getPath(), absoluteRoot.getPath(), File.separator), true);
+            changedPaths = workingTree.getChangedPaths(scanManifest.getRevision());
+        }
+
+        if (changedPaths == null)
+        {
+            log.info(WssUtils.logMsg(LOG_COMPONENT, "Comparing the checkout with the manifest of "
+                    + scanManifest.size() + " files"));
+            extractOssInfo(checkoutDirectory, pipeline, pending);
+        }
+        else
+        {
+            final Set<String> paths = new TreeSet<String>(scanManifest.getPaths());
+            paths.addAll(changedPaths);
+            log.info(WssUtils.logMsg(LOG_COMPONENT, "Checking " + changedPaths.size() + " paths changed since "
+                    + scanManifest.getRevision() + " and " + scanManifest.size() + " files of the manifest"));
 
-                boolean process = matchAny(path, includePatterns);
-                if (process)
+            int unchangedFiles = 0;
+            for (final String path : paths)
+            {
+                final ScanManifest.Entry entry = scanManifest.get(path);
+                final File file = new File(checkoutDirectory, path);
+                if (entry != null && !changedPaths.contains(path))
                 {
-                    process = !matchAny(path, excludePatterns);
+                    scannedEntries.put(path, entry);
+                    enqueue(pending, HashingPipeline.completed(createDependencyInfo(file, entry.getSha1())));
+                    scanArchive(file, null, pipeline);
+                    unchangedFiles++;
                 }
-
-                if (process)
+                else if (matcher.matches(path))
                 {
-                    dependencyInfos.add(extractDepependencyInfo(file));
+                    final BasicFileAttributes attrs = readAttributes(file);
+                    if (attrs != null && attrs.isRegularFile())
+                    {
+                        enqueue(pending, submitFile(file, path, attrs.fileKey(), pipeline));
+                        scanArchive(file, attrs.fileKey(), pipeline);
+                    }
                 }
             }
-            else
+            log.info(WssUtils.logMsg(LOG_COMPONENT, "Reused " + unchangedFiles + " unchanged files"));
+        }
+    }
+
+    /**
+     * Submits the checksum calculation of a file to the pipeline, unless the same physical file, e.g. the target of a
+     * hard or symbolic link, has been submitted before.
+     * 
+     * @param fileKey
+     *            - key identifying the physical file, see {@link BasicFileAttributes#fileKey()}, null if unknown.
+     */
+    private Future<DependencyInfo> submitFile(final File file, final String relativePath, final Object fileKey,
+            final HashingPipeline pipeline)
+    {
+        final Future<DependencyInfo> original = fileKey == null || hashedFiles == null ? null : hashedFiles
+                .get(fileKey);
+        if (original != null)
+        {
+            linkedFiles++;
+            return HashingPipeline.deferred(new Callable<DependencyInfo>()
             {
-                extractOssInfo(absoluteRoot, file, dependencyInfos);
+                @Override
+                public DependencyInfo call()
+                {
+                    final String sha1 = HashingPipeline.await(original).getSha1();
+                    if (scanManifest != null && sha1 != null)
+                    {
+                        scannedEntries.put(relativePath, new ScanManifest.Entry(file.length(), file.lastModified(),
+                                sha1));
+                    }
+                    return createDependencyInfo(file, sha1);
+                }
+            });
+        }
+
+        final Future<DependencyInfo> future = pipeline.submit(new Callable<DependencyInfo>()
+        {
+            @Override
+            public DependencyInfo call()
+            {
+                return extractDepependencyInfo(file, relativePath);
             }
+        });
+        if (fileKey != null && hashedFiles != null)
+        {
+            hashedFiles.put(fileKey, future);
         }
+
+        return future;
     }
 
-    private boolean matchAny(String value, List<Pattern> patterns)
+    /**
+     * NOTE: libraries inside archives aren't part of the scan manifest, archives are always searched. Links to an
+     * archive searched before reuse its results.
+     */
+    private void scanArchive(final File file, final Object fileKey, final HashingPipeline pipeline)
     {
-        boolean match = false;
+        if (archiveScanner == null || !ArchiveScanner.isArchive(file.getName()))
+        {
+            return;
+        }
 
-        for (Pattern pattern : patterns)
+        final ScannedArchive original = fileKey == null || scannedArchives == null ? null : scannedArchives
+                .get(fileKey);
+        if (original == null)
         {
-            if (pattern.matcher(value).matches())
+            final List<Future<List<DependencyInfo>>> contents = archiveScanner.scan(file, pipeline);
+            archiveContents.addAll(contents);
+            if (fileKey != null && scannedArchives != null)
             {
-                match = true;
-                break;
+                scannedArchives.put(fileKey, new ScannedArchive(file, contents));
             }
+            return;
         }
 
-        return match;
+        final String originalPath = original.file.getAbsolutePath();
+        final String path = file.getAbsolutePath();
+        for (final Future<List<DependencyInfo>> future : original.contents)
+        {
+            archiveContents.add(HashingPipeline.deferred(new Callable<List<DependencyInfo>>()
+            {
+                @Override
+                public List<DependencyInfo> call()
+                {
+                    final List<DependencyInfo> libraries = new ArrayList<DependencyInfo>();
+                    for (DependencyInfo library : HashingPipeline.await(future))
+                    {
+                        final DependencyInfo copy = new DependencyInfo();
+                        copy.setSystemPath(path + library.getSystemPath().substring(originalPath.length()));
+                        copy.setArtifactId(library.getArtifactId());
+                        copy.setSha1(library.getSha1());
+                        libraries.add(copy);
+                    }
+                    return libraries;
+                }
+            }));
+        }
     }
 
-    private DependencyInfo extractDepependencyInfo(File file)
+    /**
+     * Adds a pending dependency. With a compact inventory, completed dependencies are moved to the inventory while the
+     * scan proceeds, instead of keeping all of them until the end.
+     */
+    private void enqueue(final List<Future<DependencyInfo>> pending, final Future<DependencyInfo> future)
     {
-        DependencyInfo dependencyInfo = new DependencyInfo();
+        pending.add(future);
+        if (spillDirectory != null && pending.size() >= 2 * DRAIN_SIZE)
+        {
+            drain(pending, DRAIN_SIZE);
+        }
+    }
 
-        dependencyInfo.setSystemPath(file.getAbsolutePath());
-        dependencyInfo.setArtifactId(file.getName());
+    /**
+     * Waits for the first pending dependencies and adds them in order.
+     */
+    private void drain(final List<Future<DependencyInfo>> pending, final int count)
+    {
+        final List<Future<DependencyInfo>> head = pending.subList(0, count);
+        for (Future<DependencyInfo> future : head)
+        {
+            addDependencyInfo(HashingPipeline.await(future));
+        }
+        head.clear();
+    }
+
+    private void addDependencyInfo(final DependencyInfo dependencyInfo)
+    {
+        if (checksums != null && dependencyInfo.getSha1() != null && !checksums.add(dependencyInfo.getSha1()))
+        {
+            mergedFiles++;
+            return;
+        }
+
+        collected.add(dependencyInfo);
+    }
 
+    private BasicFileAttributes readAttributes(final File file)
+    {
         try
         {
-            dependencyInfo.setSha1(ChecksumUtils.calculateSHA1(file));
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        }
+        catch (IOException e)
+        {
+            // deleted since
+            return null;
+        }
+    }
+
+    private DependencyInfo extractDepependencyInfo(File file, String relativePath)
+    {
+        String sha1 = null;
+        try
+        {
+            final long size = file.length();
+            final long lastModified = file.lastModified();
+            final ScanManifest.Entry previous = scanManifest == null ? null : scanManifest.get(relativePath);
+            sha1 = previous != null && previous.matches(size, lastModified) ? previous.getSha1() : calculateSha1(file);
+            if (scanManifest != null)
+            {
+                scannedEntries.put(relativePath, new ScanManifest.Entry(size, lastModified, sha1));
+            }
         }
         catch (IOException e)
         {
             log.warn(WssUtils.logMsg(LOG_COMPONENT, ERROR_SHA1 + "for " + file.getAbsolutePath()));
         }
 
+        return createDependencyInfo(file, sha1);
+    }
+
+    private DependencyInfo createDependencyInfo(final File file, final String sha1)
+    {
+        DependencyInfo dependencyInfo = new DependencyInfo();
+
+        dependencyInfo.setSystemPath(file.getAbsolutePath());
+        dependencyInfo.setArtifactId(file.getName());
+        dependencyInfo.setSha1(sha1);
+
         return dependencyInfo;
     }
 
-    // NOTE: derived from http://stackoverflow.com/a/1248627/45773.
-    private String convertGlobToRegEx(String line)
+    /**
+     * Walks the checkout, skipping subtrees no pattern can match, and feeds matching files to the pipeline.
+     * 
+     * The relative path and the matcher state of each directory on the way down are kept on a stack, so a file only
+     * costs matching its own name.
+     */
+    private class ScanVisitor extends SimpleFileVisitor<Path>
     {
-        log.debug(WssUtils.logMsg(LOG_COMPONENT, "Input glob expression: " + line));
-        line = line.trim();
-        int strLen = line.length();
-        StringBuilder sb = new StringBuilder(strLen);
-        // Remove beginning and ending * globs because they're useless
-        if (line.startsWith("*"))
+        private final Path rootPath;
+        private final HashingPipeline pipeline;
+        private final List<Future<DependencyInfo>> dependencyInfos;
+        private final ResourceUtils.RelativePath relativePath = new ResourceUtils.RelativePath('/');
+        private final List<GlobMatcher.State> states = new ArrayList<GlobMatcher.State>();
+        private int directories;
+        private int prunedDirectories;
+        private int files;
+
+        private ScanVisitor(final File absoluteRoot, final HashingPipeline pipeline,
+                final List<Future<DependencyInfo>> dependencyInfos)
         {
-            line = line.substring(1);
-            strLen--;
+            this.rootPath = absoluteRoot.toPath();
+            this.pipeline = pipeline;
+            this.dependencyInfos = dependencyInfos;
         }
-        if (line.endsWith("*"))
-        {
-            line = line.substring(0, strLen - 1);
-            strLen--;
-        }
-        boolean escaping = false;
-        int inCurlies = 0;
-        for (char currentChar : line.toCharArray())
+
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
         {
-            switch (currentChar)
+            if (dir.equals(rootPath))
             {
-            case '*':
-                if (escaping)
-                    sb.append("\\*");
-                else
-                    sb.append(".*");
-                escaping = false;
-                break;
-            case '?':
-                if (escaping)
-                    sb.append("\\?");
-                else
-                    sb.append('.');
-                escaping = false;
-                break;
-            case '.':
-            case '(':
-            case ')':
-            case '+':
-            case '|':
-            case '^':
-            case '$':
-            case '@':
-            case '%':
-                sb.append('\\');
-                sb.append(currentChar);
-                escaping = false;
-                break;
-            case '\\':
-                if (escaping)
-                {
-                    sb.append("\\\\");
-                    escaping = false;
-                }
-                else
-                    escaping = true;
-                break;
-            case '{':
-                if (escaping)
-                {
-                    sb.append("\\{");
-                }
-                else
-                {
-                    sb.append('(');
-                    inCurlies++;
-                }
-                escaping = false;
-                break;
-            case '}':
-                if (inCurlies > 0 && !escaping)
+                states.add(matcher.start());
+            }
+            else
+            {
+                final String name = dir.getFileName().toString();
+                final GlobMatcher.State state = currentState().next(name).next('/');
+                relativePath.enter(name);
+                if (!matcher.canMatchBelow(state, relativePath))
                 {
-                    sb.append(')');
-                    inCurlies--;
+                    relativePath.leave();
+                    prunedDirectories++;
+                    return FileVisitResult.SKIP_SUBTREE;
                 }
-                else if (escaping)
-                    sb.append("\\}");
-                else
-                    sb.append("}");
-                escaping = false;
-                break;
-            case ',':
-                if (inCurlies > 0 && !escaping)
+                states.add(state);
+            }
+
+            directories++;
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(final Path dir, final IOException e)
+        {
+            states.remove(states.size() - 1);
+            if (!states.isEmpty())
+            {
+                relativePath.leave();
+            }
+
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs)
+        {
+            if (attrs.isRegularFile())
+            {
+                files++;
+                final String name = path.getFileName().toString();
+                final int length = relativePath.append(name);
+                final boolean matches = matcher.matches(currentState().next(name), relativePath);
+                final String filePath = matches && scanManifest != null ? relativePath.toString() : null;
+                relativePath.truncate(length);
+
+                if (matches)
                 {
-                    sb.append('|');
+                    final File file = path.toFile();
+                    enqueue(dependencyInfos, submitFile(file, filePath, attrs.fileKey(), pipeline));
+                    scanArchive(file, attrs.fileKey(), pipeline);
                 }
-                else if (escaping)
-                    sb.append("\\,");
-                else
-                    sb.append(",");
-                break;
-            default:
-                escaping = false;
-                sb.append(currentChar);
             }
+
+            return FileVisitResult.CONTINUE;
         }
 
-        log.debug(WssUtils.logMsg(LOG_COMPONENT, "Output regular expression: " + sb.toString()));
-        return sb.toString();
+        @Override
+        public FileVisitResult visitFileFailed(final Path path, final IOException e)
+        {
+            // unreadable entries and symbolic link cycles are skipped, like File.listFiles() did before
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, "Skipping " + path + ": " + e));
+            return FileVisitResult.CONTINUE;
+        }
+
+        private GlobMatcher.State currentState()
+        {
+            return states.get(states.size() - 1);
+        }
+    }
+
+    private static final class ScannedArchive
+    {
+        private final File file;
+        private final List<Future<List<DependencyInfo>>> contents;
+
+        private ScannedArchive(final File file, final List<Future<List<DependencyInfo>>> contents)
+        {
+            this.file = file;
+            this.contents = contents;
+        }
     }
 
     @Override
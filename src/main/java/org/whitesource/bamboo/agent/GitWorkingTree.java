@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Git working tree of a checkout, queried via the git command line client installed on the agent.
+ */
+public class GitWorkingTree
+{
+    private static final String LOG_COMPONENT = "GitWorkingTree";
+    private static final String GIT = "git";
+
+    private final Logger log = LoggerFactory.getLogger(GitWorkingTree.class);
+    private final File directory;
+
+    private GitWorkingTree(final File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the working tree whose top level directory is the given one, or null if it isn't one or git isn't
+     *         available.
+     */
+    public static GitWorkingTree open(final File directory)
+    {
+        if (!new File(directory, ".git").exists())
+        {
+            return null;
+        }
+
+        final GitWorkingTree workingTree = new GitWorkingTree(directory);
+        // paths reported by git are relative to the top level directory
+        final String prefix = workingTree.git("rev-parse", "--show-prefix");
+
+        return prefix != null && prefix.trim().isEmpty() ? workingTree : null;
+    }
+
+    /**
+     * @return the commit checked out, or null if it can't be determined.
+     */
+    public String getHead()
+    {
+        final String head = git("rev-parse", "--verify", "HEAD");
+        return head == null ? null : head.trim();
+    }
+
+    /**
+     * Lists the paths which may differ from the given commit: files changed by later commits, files changed in the
+     * working tree, as well as all untracked and ignored files, since git doesn't track their content.
+     * 
+     * @return paths relative to the working tree, using '/' as separator, or null if they can't be determined, e.g.
+     *         because the commit is no longer known.
+     */
+    public Set<String> getChangedPaths(final String revision)
+    {
+        final String diff = git("diff", "--name-only", "--no-renames", "-z", revision, "HEAD");
+        final String status = diff == null ? null : git("status", "--porcelain", "-z", "--untracked-files=all",
+                "--ignored");
+        if (status == null)
+        {
+            return null;
+        }
+
+        final Set<String> paths = new HashSet<String>();
+        for (String path : diff.split("\0"))
+        {
+            if (!path.isEmpty())
+            {
+                paths.add(path);
+            }
+        }
+
+        final String[] entries = status.split("\0");
+        for (int i = 0; i < entries.length; i++)
+        {
+            final String entry = entries[i];
+            if (entry.length() < 4)
+            {
+                continue;
+            }
+
+            paths.add(entry.substring(3));
+            if (entry.charAt(0) == 'R' || entry.charAt(0) == 'C')
+            {
+                // the source path of a rename or copy follows as a separate entry
+                if (i + 1 < entries.length)
+                {
+                    paths.add(entries[++i]);
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return the standard output of the command, or null if it failed.
+     */
+    private String git(final String... arguments)
+    {
+        final List<String> command = new ArrayList<String>();
+        command.add(GIT);
+        for (String argument : arguments)
+        {
+            command.add(argument);
+        }
+
+        final ProcessBuilder builder = new ProcessBuilder(command).directory(directory);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try
+        {
+            final Process process = builder.start();
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final InputStream in = process.getInputStream();
+            try
+            {
+                process.getOutputStream().close();
+                IOUtils.copy(in, output);
+            }
+            finally
+            {
+                in.close();
+            }
+
+            final int exitCode = process.waitFor();
+            if (exitCode != 0)
+            {
+                log.debug(WssUtils.logMsg(LOG_COMPONENT, command + " exited with " + exitCode));
+                return null;
+            }
+
+            return output.toString("UTF-8");
+        }
+        catch (IOException e)
+        {
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, command + " failed: " + e.getMessage()));
+            return null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
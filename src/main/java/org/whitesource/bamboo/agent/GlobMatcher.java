@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches relative paths against a set of include and exclude globs in a single pass.
+ *
+ * All globs are compiled into one nondeterministic automaton, which is turned into a deterministic one lazily, i.e.
+ * only the states actually reached by the scanned paths are ever built. The supported syntax is the one of
+ * {@link #convertGlobToRegEx(String)}: '*' matches any sequence, '?' any single character, '{a,b}' alternatives and
+ * '\' escapes. Globs using character classes ('[...]') are passed through to java.util.regex and matched separately.
+ *
+ * Instances are thread safe.
+ */
+public class GlobMatcher
+{
+    private static final Logger log = LoggerFactory.getLogger(GlobMatcher.class);
+    private static final String LOG_COMPONENT = "GlobMatcher";
+    private static final int ASCII = 128;
+
+    private final List<NfaState> nfa = new ArrayList<NfaState>();
+    private final ConcurrentMap<StateKey, State> states = new ConcurrentHashMap<StateKey, State>();
+    private final List<Pattern> regexIncludes = new ArrayList<Pattern>();
+    private final List<Pattern> regexExcludes = new ArrayList<Pattern>();
+    private final State start;
+
+    public GlobMatcher(final Collection<String> includes, final Collection<String> excludes)
+    {
+        NfaState root = newState(NfaState.SPLIT);
+        for (String glob : includes)
+        {
+            compile(glob, true, root, regexIncludes);
+        }
+        for (String glob : excludes)
+        {
+            compile(glob, false, root, regexExcludes);
+        }
+
+        BitSet closure = new BitSet(nfa.size());
+        addClosure(root, closure);
+        start = intern(closure);
+    }
+
+    /**
+     * @return the state before consuming any character.
+     */
+    public State start()
+    {
+        return start;
+    }
+
+    /**
+     * @return whether the path matches an include but no exclude glob.
+     */
+    public boolean matches(final CharSequence path)
+    {
+        return matches(start.next(path), path);
+    }
+
+    /**
+     * @param state
+     *            - the state after consuming the full path.
+     * @param path
+     *            - the path itself, only evaluated by character class globs.
+     */
+    public boolean matches(final State state, final CharSequence path)
+    {
+        boolean included = state.include || matchAny(path, regexIncludes);
+        return included && !(state.exclude || matchAny(path, regexExcludes));
+    }
+
+    /**
+     * @return false only if no path starting with directoryPath can match, i.e. the directory can be skipped.
+     */
+    public boolean canMatchBelow(final CharSequence directoryPath)
+    {
+        return canMatchBelow(start.next(directoryPath), directoryPath);
+    }
+
+    /**
+     * @param state
+     *            - the state after consuming the directory path, including its trailing '/'.
+     * @param directoryPath
+     *            - the directory path itself, only evaluated by character class globs.
+     */
+    public boolean canMatchBelow(final State state, final CharSequence directoryPath)
+    {
+        if (state.excludeAll)
+        {
+            return false;
+        }
+
+        if (state.includeLive)
+        {
+            return true;
+        }
+
+        for (Pattern pattern : regexIncludes)
+        {
+            Matcher matcher = pattern.matcher(directoryPath);
+            // hitEnd() signals that more input could still yield a match
+            if (matcher.matches() || matcher.hitEnd())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of deterministic states built so far.
+     */
+    public int getStateCount()
+    {
+        return states.size();
+    }
+
+    // NOTE: derived from http://stackoverflow.com/a/1248627/45773.
+    public static String convertGlobToRegEx(String line)
+    {
+        log.debug(WssUtils.logMsg(LOG_COMPONENT, "Input glob expression: " + line));
+        line = line.trim();
+        int strLen = line.length();
+        StringBuilder sb = new StringBuilder(strLen);
+        // Remove beginning and ending * globs because they're useless
+        if (line.startsWith("*"))
+        {
+            line = line.substring(1);
+            strLen--;
+        }
+        if (line.endsWith("*"))
+        {
+            line = line.substring(0, strLen - 1);
+            strLen--;
+        }
+        boolean escaping = false;
+        int inCurlies = 0;
+        for (char currentChar : line.toCharArray())
+        {
+            switch (currentChar)
+            {
+            case '*':
+                if (escaping)
+                    sb.append("\\*");
+                else
+                    sb.append(".*");
+                escaping = false;
+                break;
+            case '?':
+                if (escaping)
+                    sb.append("\\?");
+                else
+                    sb.append('.');
+                escaping = false;
+                break;
+            case '.':
+            case '(':
+            case ')':
+            case '+':
+            case '|':
+            case '^':
+            case '$':
+            case '@':
+            case '%':
+                sb.append('\\');
+                sb.append(currentChar);
+                escaping = false;
+                break;
+            case '\\':
+                if (escaping)
+                {
+                    sb.append("\\\\");
+                    escaping = false;
+                }
+                else
+                    escaping = true;
+                break;
+            case '{':
+                if (escaping)
+                {
+                    sb.append("\\{");
+                }
+                else
+                {
+                    sb.append('(');
+                    inCurlies++;
+                }
+                escaping = false;
+                break;
+            case '}':
+                if (inCurlies > 0 && !escaping)
+                {
+                    sb.append(')');
+                    inCurlies--;
+                }
+                else if (escaping)
+                    sb.append("\\}");
+                else
+                    sb.append("}");
+                escaping = false;
+                break;
+            case ',':
+                if (inCurlies > 0 && !escaping)
+                {
+                    sb.append('|');
+                }
+                else if (escaping)
+                    sb.append("\\,");
+                else
+                    sb.append(",");
+                break;
+            default:
+                escaping = false;
+                sb.append(currentChar);
+            }
+        }
+
+        log.debug(WssUtils.logMsg(LOG_COMPONENT, "Output regular expression: " + sb.toString()));
+        return sb.toString();
+    }
+
+    /* --- Compilation --- */
+
+    private void compile(final String glob, final boolean include, final NfaState root,
+            final List<Pattern> regexPatterns)
+    {
+        if (glob.indexOf('[') >= 0)
+        {
+            regexPatterns.add(Pattern.compile(convertGlobToRegEx(glob)));
+            return;
+        }
+
+        List<List<Node>> alternatives = parse(glob);
+        if (alternatives.size() != 1)
+        {
+            throw new IllegalArgumentException("Unclosed '{' in pattern '" + glob + "'");
+        }
+
+        final int first = nfa.size();
+        NfaState match = newState(include ? NfaState.INCLUDE : NfaState.EXCLUDE);
+        root.epsilons.add(compile(alternatives.get(0), match, include));
+        for (int id = first; id < nfa.size(); id++)
+        {
+            nfa.get(id).include = include;
+        }
+    }
+
+    /**
+     * Parses a glob like {@link #convertGlobToRegEx(String)} does, but into a syntax tree instead of a regular
+     * expression. Returns the alternatives of the innermost group left open, i.e. a single sequence for a valid glob.
+     */
+    private List<List<Node>> parse(String line)
+    {
+        line = line.trim();
+        // Remove beginning and ending * globs, as convertGlobToRegEx() does
+        if (line.startsWith("*"))
+        {
+            line = line.substring(1);
+        }
+        if (line.endsWith("*"))
+        {
+            line = line.substring(0, line.length() - 1);
+        }
+
+        // stack of open groups, each one a list of alternatives
+        List<List<List<Node>>> groups = new ArrayList<List<List<Node>>>();
+        groups.add(newAlternatives());
+        boolean escaping = false;
+        for (char currentChar : line.toCharArray())
+        {
+            List<List<Node>> alternatives = groups.get(groups.size() - 1);
+            List<Node> sequence = alternatives.get(alternatives.size() - 1);
+            switch (currentChar)
+            {
+            case '*':
+                sequence.add(escaping ? Node.literal('*') : Node.ANY_SEQUENCE);
+                escaping = false;
+                break;
+            case '?':
+                sequence.add(escaping ? Node.literal('?') : Node.ANY_CHAR);
+                escaping = false;
+                break;
+            case '\\':
+                if (escaping)
+                {
+                    sequence.add(Node.literal('\\'));
+                }
+                escaping = !escaping;
+                break;
+            case '{':
+                if (escaping)
+                {
+                    sequence.add(Node.literal('{'));
+                }
+                else
+                {
+                    groups.add(newAlternatives());
+                }
+                escaping = false;
+                break;
+            case '}':
+                if (groups.size() > 1 && !escaping)
+                {
+                    groups.remove(groups.size() - 1);
+                    List<List<Node>> outer = groups.get(groups.size() - 1);
+                    outer.get(outer.size() - 1).add(Node.group(alternatives));
+                }
+                else
+                {
+                    sequence.add(Node.literal('}'));
+                }
+                escaping = false;
+                break;
+            case ',':
+                // NOTE: like convertGlobToRegEx(), a comma doesn't reset the escaping state.
+                if (groups.size() > 1 && !escaping)
+                {
+                    alternatives.add(new ArrayList<Node>());
+                }
+                else
+                {
+                    sequence.add(Node.literal(','));
+                }
+                break;
+            default:
+                escaping = false;
+                sequence.add(Node.literal(currentChar));
+            }
+        }
+
+        return groups.size() == 1 ? groups.get(0) : new ArrayList<List<Node>>();
+    }
+
+    private static List<List<Node>> newAlternatives()
+    {
+        List<List<Node>> alternatives = new ArrayList<List<Node>>();
+        alternatives.add(new ArrayList<Node>());
+        return alternatives;
+    }
+
+    /**
+     * Thompson construction, building from the end of the sequence backwards.
+     */
+    private NfaState compile(final List<Node> sequence, final NfaState next, final boolean include)
+    {
+        NfaState current = next;
+        for (int i = sequence.size() - 1; i >= 0; i--)
+        {
+            Node node = sequence.get(i);
+            switch (node.type)
+            {
+            case Node.LITERAL:
+                NfaState literal = newState(NfaState.CHAR);
+                literal.character = node.character;
+                literal.next = current;
+                current = literal;
+                break;
+            case Node.ANY:
+                NfaState any = newState(NfaState.ANY_CHAR);
+                any.next = current;
+                current = any;
+                break;
+            case Node.STAR:
+                NfaState loop = newState(NfaState.SPLIT);
+                NfaState anyInLoop = newState(NfaState.ANY_CHAR);
+                anyInLoop.next = loop;
+                loop.epsilons.add(anyInLoop);
+                loop.epsilons.add(current);
+                // an exclude glob ending in '**' excludes anything following this point. A single trailing '*' is
+                // stripped by parse(), so such a glob never gets here and doesn't exclude a subtree.
+                loop.excludeAll = !include && current.type == NfaState.EXCLUDE;
+                current = loop;
+                break;
+            default:
+                NfaState split = newState(NfaState.SPLIT);
+                for (List<Node> alternative : node.alternatives)
+                {
+                    split.epsilons.add(compile(alternative, current, include));
+                }
+                current = split;
+            }
+        }
+
+        return current;
+    }
+
+    private NfaState newState(final int type)
+    {
+        NfaState state = new NfaState(nfa.size(), type);
+        nfa.add(state);
+        return state;
+    }
+
+    /* --- Determinization --- */
+
+    private static void addClosure(final NfaState state, final BitSet closure)
+    {
+        if (closure.get(state.id))
+        {
+            return;
+        }
+
+        closure.set(state.id);
+        for (NfaState epsilon : state.epsilons)
+        {
+            addClosure(epsilon, closure);
+        }
+    }
+
+    private State intern(final BitSet closure)
+    {
+        StateKey key = new StateKey(closure);
+        State state = states.get(key);
+        if (state == null)
+        {
+            State created = new State(this, closure);
+            state = states.putIfAbsent(key, created);
+            if (state == null)
+            {
+                state = created;
+            }
+        }
+
+        return state;
+    }
+
+    private State computeNext(final State state, final char c)
+    {
+        BitSet closure = new BitSet(nfa.size());
+        final BitSet current = state.closure;
+        for (int id = current.nextSetBit(0); id >= 0; id = current.nextSetBit(id + 1))
+        {
+            NfaState nfaState = nfa.get(id);
+            if ((nfaState.type == NfaState.CHAR && nfaState.character == c)
+                    || (nfaState.type == NfaState.ANY_CHAR && !isLineTerminator(c)))
+            {
+                addClosure(nfaState.next, closure);
+            }
+        }
+
+        return intern(closure);
+    }
+
+    /**
+     * Like '.' in java.util.regex, '?' and '*' don't match line terminators.
+     */
+    private static boolean isLineTerminator(final char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean matchAny(final CharSequence value, final List<Pattern> patterns)
+    {
+        for (Pattern pattern : patterns)
+        {
+            if (pattern.matcher(value).matches())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A deterministic state, i.e. the set of automaton states reachable by the characters consumed so far.
+     */
+    public static final class State
+    {
+        private final GlobMatcher matcher;
+        private final BitSet closure;
+        private final boolean include;
+        private final boolean exclude;
+        private final boolean includeLive;
+        private final boolean excludeAll;
+        // NOTE: racy but benign, as states are interned and only have final fields.
+        private final State[] asciiTransitions = new State[ASCII];
+        private final ConcurrentMap<Character, State> transitions = new ConcurrentHashMap<Character, State>();
+
+        private State(final GlobMatcher matcher, final BitSet closure)
+        {
+            this.matcher = matcher;
+            this.closure = closure;
+
+            boolean include = false;
+            boolean exclude = false;
+            boolean includeLive = false;
+            boolean excludeAll = false;
+            for (int id = closure.nextSetBit(0); id >= 0; id = closure.nextSetBit(id + 1))
+            {
+                NfaState nfaState = matcher.nfa.get(id);
+                include |= nfaState.type == NfaState.INCLUDE;
+                exclude |= nfaState.type == NfaState.EXCLUDE;
+                includeLive |= nfaState.include
+                        && (nfaState.type == NfaState.CHAR || nfaState.type == NfaState.ANY_CHAR);
+                excludeAll |= nfaState.excludeAll;
+            }
+            this.include = include;
+            this.exclude = exclude;
+            this.includeLive = includeLive;
+            this.excludeAll = excludeAll;
+        }
+
+        public State next(final char c)
+        {
+            State next = c < ASCII ? asciiTransitions[c] : transitions.get(c);
+            if (next == null)
+            {
+                next = matcher.computeNext(this, c);
+                if (c < ASCII)
+                {
+                    asciiTransitions[c] = next;
+                }
+                else
+                {
+                    transitions.put(c, next);
+                }
+            }
+
+            return next;
+        }
+
+        public State next(final CharSequence chars)
+        {
+            State state = this;
+            for (int i = 0; i < chars.length(); i++)
+            {
+                state = state.next(chars.charAt(i));
+            }
+
+            return state;
+        }
+    }
+
+    private static final class StateKey
+    {
+        private final BitSet closure;
+        private final int hash;
+
+        private StateKey(final BitSet closure)
+        {
+            this.closure = closure;
+            this.hash = closure.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            return obj instanceof StateKey && closure.equals(((StateKey) obj).closure);
+        }
+    }
+
+    private static final class NfaState
+    {
+        private static final int CHAR = 0;
+        private static final int ANY_CHAR = 1;
+        private static final int SPLIT = 2;
+        private static final int INCLUDE = 3;
+        private static final int EXCLUDE = 4;
+
+        private final int id;
+        private final int type;
+        private final List<NfaState> epsilons = new ArrayList<NfaState>(2);
+        private char character;
+        private NfaState next;
+        private boolean include;
+        private boolean excludeAll;
+
+        private NfaState(final int id, final int type)
+        {
+            this.id = id;
+            this.type = type;
+        }
+    }
+
+    private static final class Node
+    {
+        private static final int LITERAL = 0;
+        private static final int ANY = 1;
+        private static final int STAR = 2;
+        private static final int GROUP = 3;
+        private static final Node ANY_CHAR = new Node(ANY, '\0', null);
+        private static final Node ANY_SEQUENCE = new Node(STAR, '\0', null);
+
+        private final int type;
+        private final char character;
+        private final List<List<Node>> alternatives;
+
+        private Node(final int type, final char character, final List<List<Node>> alternatives)
+        {
+            this.type = type;
+            this.character = character;
+            this.alternatives = alternatives;
+        }
+
+        private static Node literal(final char character)
+        {
+            return new Node(LITERAL, character, null);
+        }
+
+        private static Node group(final List<List<Node>> alternatives)
+        {
+            return new Node(GROUP, '\0', alternatives);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return nfa.size() + " automaton states, " + states.size() + " deterministic states, "
+                + (regexIncludes.size() + regexExcludes.size()) + " regular expressions";
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded worker pool for checksum calculations, fed by the (single threaded) directory walk.
+ *
+ * The work queue is bounded, so once it is full the submitting thread runs the task itself; this throttles the walk
+ * instead of buffering an unbounded number of pending files. Callers keep the returned futures in submission order to
+ * obtain deterministic results. With a pool size of one or less all tasks are executed inline.
+ */
+public class HashingPipeline
+{
+    private static final int QUEUE_SIZE_PER_THREAD = 16;
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    public HashingPipeline(final int threads)
+    {
+        if (threads > 1)
+        {
+            executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD), new HashingThreadFactory(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        else
+        {
+            executor = null;
+        }
+    }
+
+    public <T> Future<T> submit(final Callable<T> task)
+    {
+        if (executor == null)
+        {
+            FutureTask<T> future = new FutureTask<T>(task);
+            future.run();
+            return future;
+        }
+
+        return executor.submit(task);
+    }
+
+    /**
+     * @return a future already holding the given result, for entries that need no calculation.
+     */
+    public static <T> Future<T> completed(final T value)
+    {
+        FutureTask<T> future = new FutureTask<T>(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }, value);
+        future.run();
+        return future;
+    }
+
+    /**
+     * @return a future calculating its result on the first call to get(), in the calling thread, e.g. to derive a
+     *         result from another future without blocking the submitting thread.
+     */
+    public static <T> Future<T> deferred(final Callable<T> task)
+    {
+        return new FutureTask<T>(task)
+        {
+            @Override
+            public T get() throws InterruptedException, ExecutionException
+            {
+                run();
+                return super.get();
+            }
+        };
+    }
+
+    /**
+     * Waits for the given task to complete, rethrowing any failure unchecked.
+     */
+    public static <T> T await(final Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for checksum calculation!", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Checksum calculation failed!", e.getCause());
+        }
+    }
+
+    public boolean isParallel()
+    {
+        return executor != null;
+    }
+
+    public void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory
+    {
+        private final int poolNumber = POOL_COUNT.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "whitesource-hashing-" + poolNumber + "-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
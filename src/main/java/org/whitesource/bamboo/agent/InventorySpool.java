@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+
+/**
+ * Durable local queue of inventory updates which still have to be sent to White Source.
+ *
+ * Each update is a file holding the API key, the keys of its projects and the serialized projects. Files are named by
+ * creation time and a sequence number, so {@link #list()} returns them in the order they were spooled, and only renamed
+ * into place once complete. Since they contain the API key, the spool directory and its files are readable by their
+ * owner only.
+ */
+public class InventorySpool
+{
+    public static final String SPOOL_DIRECTORY = "spool";
+    public static final String SPOOL_SUFFIX = ".spool";
+
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int FORMAT_VERSION = 2;
+    private static final char KEY_SEPARATOR = '\u001f';
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final File directory;
+
+    public InventorySpool(final File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the spool in the agent's data directory.
+     */
+    public static InventorySpool openDefault()
+    {
+        return new InventorySpool(new File(WssUtils.getAgentDataDirectory(), SPOOL_DIRECTORY));
+    }
+
+    /**
+     * @return the file the update was spooled to.
+     */
+    public File spool(final String apiKey, final Collection<AgentProjectInfo> projectInfos) throws IOException
+    {
+        // another task may create the directory concurrently, then it restricts the permissions
+        if (directory.mkdirs())
+        {
+            AgentDataFile.restrictToOwner(directory);
+        }
+        else if (!directory.isDirectory())
+        {
+            throw new IOException("Can't create spool directory " + directory);
+        }
+
+        final String name = String.format("%013d-%06d", System.currentTimeMillis(),
+                SEQUENCE.incrementAndGet() % 1000000);
+        final File spoolFile = new File(directory, name + SPOOL_SUFFIX);
+        write(spoolFile, apiKey, projectInfos);
+
+        return spoolFile;
+    }
+
+    /**
+     * Drops the given projects from all spooled updates with the same API key, e.g. since they are about to be sent
+     * directly, so the older updates can't overwrite them afterwards. Updates left without projects are removed.
+     * 
+     * @return the number of projects dropped.
+     */
+    public int supersede(final String apiKey, final Collection<AgentProjectInfo> projectInfos) throws IOException
+    {
+        final Set<String> keys = new HashSet<String>(keysOf(apiKey, projectInfos));
+        int dropped = 0;
+        for (File spoolFile : list())
+        {
+            try
+            {
+                if (Collections.disjoint(readKeys(spoolFile), keys))
+                {
+                    continue;
+                }
+            }
+            catch (IOException e)
+            {
+                // unreadable, hence set aside by the forwarder
+                continue;
+            }
+
+            final SpooledUpdate update = read(spoolFile);
+            final List<AgentProjectInfo> remaining = new ArrayList<AgentProjectInfo>();
+            for (AgentProjectInfo projectInfo : update.getProjectInfos())
+            {
+                if (!keys.contains(keyOf(apiKey, projectInfo)))
+                {
+                    remaining.add(projectInfo);
+                }
+            }
+            dropped += update.getProjectInfos().size() - remaining.size();
+            if (remaining.isEmpty())
+            {
+                remove(spoolFile);
+            }
+            else
+            {
+                write(spoolFile, apiKey, remaining);
+            }
+        }
+
+        return dropped;
+    }
+
+    /**
+     * @return the spooled updates, oldest first.
+     */
+    public List<File> list()
+    {
+        final File[] files = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(final File dir, final String name)
+            {
+                return name.endsWith(SPOOL_SUFFIX);
+            }
+        });
+        if (files == null)
+        {
+            return new ArrayList<File>();
+        }
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * @return the keys of the projects in the update, telling apart the same project sent with different API keys,
+     *         read without the projects themselves.
+     */
+    public List<String> readKeys(final File spoolFile) throws IOException
+    {
+        ObjectInputStream in = null;
+        try
+        {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+            readHeader(spoolFile, in);
+            return readKeys(in);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    public SpooledUpdate read(final File spoolFile) throws IOException
+    {
+        ObjectInputStream in = null;
+        try
+        {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+            final String apiKey = readHeader(spoolFile, in);
+            readKeys(in);
+            @SuppressWarnings("unchecked")
+            final List<AgentProjectInfo> projectInfos = (List<AgentProjectInfo>) in.readObject();
+
+            return new SpooledUpdate(spoolFile, apiKey, projectInfos);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Incompatible spool file " + spoolFile, e);
+        }
+        catch (ClassCastException e)
+        {
+            throw new IOException("Incompatible spool file " + spoolFile, e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Removes a spooled update once it has been sent.
+     */
+    public void remove(final File spoolFile) throws IOException
+    {
+        if (!spoolFile.delete() && spoolFile.exists())
+        {
+            throw new IOException("Can't remove spool file " + spoolFile);
+        }
+    }
+
+    /**
+     * Sets an update aside which can't be read or sent, so it doesn't block the ones after it but can still be
+     * inspected.
+     */
+    public void reject(final File spoolFile)
+    {
+        spoolFile.renameTo(new File(spoolFile.getPath() + FAILED_SUFFIX));
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return the keys identifying the given projects sent with the given API key, see {@link #readKeys(File)}.
+     */
+    public static List<String> keysOf(final String apiKey, final Collection<AgentProjectInfo> projectInfos)
+    {
+        final List<String> keys = new ArrayList<String>(projectInfos.size());
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            keys.add(keyOf(apiKey, projectInfo));
+        }
+
+        return keys;
+    }
+
+    private static String keyOf(final String apiKey, final AgentProjectInfo projectInfo)
+    {
+        return apiKey + KEY_SEPARATOR + InventoryStateStore.projectKey(projectInfo);
+    }
+
+    private void write(final File spoolFile, final String apiKey, final Collection<AgentProjectInfo> projectInfos)
+            throws IOException
+    {
+        final File tempFile = new File(directory, spoolFile.getName() + TEMP_SUFFIX);
+        // restrict access before anything is written to the file
+        tempFile.createNewFile();
+        AgentDataFile.restrictToOwner(tempFile);
+        final List<String> keys = keysOf(apiKey, projectInfos);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try
+        {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(apiKey);
+            out.writeInt(keys.size());
+            for (String key : keys)
+            {
+                out.writeUTF(key);
+            }
+            out.writeObject(new ArrayList<AgentProjectInfo>(projectInfos));
+        }
+        finally
+        {
+            out.close();
+        }
+
+        // some platforms don't replace existing files on rename
+        if (!tempFile.renameTo(spoolFile) && !(spoolFile.delete() && tempFile.renameTo(spoolFile)))
+        {
+            tempFile.delete();
+            throw new IOException("Can't write spool file " + spoolFile);
+        }
+    }
+
+    /**
+     * @return the API key of the update.
+     */
+    private static String readHeader(final File spoolFile, final ObjectInputStream in) throws IOException
+    {
+        if (in.readInt() != FORMAT_VERSION)
+        {
+            throw new IOException("Incompatible spool file " + spoolFile);
+        }
+
+        return in.readUTF();
+    }
+
+    private static List<String> readKeys(final ObjectInputStream in) throws IOException
+    {
+        final int count = in.readInt();
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < count; i++)
+        {
+            keys.add(in.readUTF());
+        }
+
+        return keys;
+    }
+
+    /**
+     * An update read from the spool.
+     */
+    public static final class SpooledUpdate
+    {
+        private final File file;
+        private final String apiKey;
+        private final List<AgentProjectInfo> projectInfos;
+
+        private SpooledUpdate(final File file, final String apiKey, final List<AgentProjectInfo> projectInfos)
+        {
+            this.file = file;
+            this.apiKey = apiKey;
+            this.projectInfos = projectInfos;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public String getApiKey()
+        {
+            return apiKey;
+        }
+
+        public List<AgentProjectInfo> getProjectInfos()
+        {
+            return projectInfos;
+        }
+    }
+}
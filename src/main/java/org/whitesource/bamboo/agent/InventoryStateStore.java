@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.api.model.ExclusionInfo;
+
+/**
+ * Remembers a digest of each project last sent to White Source by a plan, so unchanged projects can be skipped.
+ *
+ * Projects are identified by their token, or by their coordinates if they have none. The digest covers the API key and
+ * everything sent for a project, with dependencies and exclusions in sorted order, so a project sent to another
+ * organization counts as changed. An entry expires after {@link #DEFAULT_MAX_AGE}, so
+ * an unchanged project is still sent once in a while. One state file per plan is kept in the agent's data directory.
+ */
+public class InventoryStateStore
+{
+    public static final String STATE_DIRECTORY = "inventory-state";
+    public static final long DEFAULT_MAX_AGE = 24L * 60 * 60 * 1000;
+
+    private static final String LOG_COMPONENT = "InventoryStateStore";
+    private static final String VALUE_SEPARATOR = ",";
+    private static final char FIELD_SEPARATOR = '\u001f';
+
+    private final Logger log = LoggerFactory.getLogger(InventoryStateStore.class);
+    private final File stateFile;
+    private final String apiKey;
+    private final long maxAge;
+    private final Properties state = new Properties();
+    private final Set<String> updatedKeys = new HashSet<String>();
+
+    public InventoryStateStore(final File stateFile, final String apiKey, final long maxAge)
+    {
+        this.stateFile = stateFile;
+        this.apiKey = apiKey;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @return the store of the given plan in the agent's data directory, loaded from disk if present.
+     */
+    public static InventoryStateStore open(final String planKey, final String apiKey)
+    {
+        File directory = new File(WssUtils.getAgentDataDirectory(), STATE_DIRECTORY);
+        InventoryStateStore store = new InventoryStateStore(new File(directory, planKey.replaceAll("[^\\w.-]", "_")
+                + ".properties"), apiKey, DEFAULT_MAX_AGE);
+        store.load();
+
+        return store;
+    }
+
+    /**
+     * @return true if the project differs from the one last marked as updated, or if that was too long ago.
+     */
+    public synchronized boolean isChanged(final AgentProjectInfo projectInfo)
+    {
+        final String value = state.getProperty(projectKey(projectInfo));
+        if (value == null)
+        {
+            return true;
+        }
+
+        final String[] parts = value.split(VALUE_SEPARATOR, 2);
+        try
+        {
+            return parts.length != 2 || System.currentTimeMillis() - Long.parseLong(parts[1]) > maxAge
+                    || !parts[0].equals(digest(apiKey, projectInfo));
+        }
+        catch (NumberFormatException e)
+        {
+            return true;
+        }
+    }
+
+    public synchronized void markUpdated(final Collection<AgentProjectInfo> projectInfos)
+    {
+        final long now = System.currentTimeMillis();
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            final String key = projectKey(projectInfo);
+            state.setProperty(key, digest(apiKey, projectInfo) + VALUE_SEPARATOR + now);
+            updatedKeys.add(key);
+        }
+    }
+
+    public synchronized void load()
+    {
+        state.clear();
+        state.putAll(read(stateFile));
+        updatedKeys.clear();
+    }
+
+    /**
+     * Saves the projects marked as updated, merged with the ones other agents saved since the store was loaded.
+     */
+    public synchronized void save() throws IOException
+    {
+        AgentDataFile.save(stateFile, new AgentDataFile.Content()
+        {
+            @Override
+            public void merge(final File file)
+            {
+                for (Map.Entry<Object, Object> entry : read(file).entrySet())
+                {
+                    if (!updatedKeys.contains(entry.getKey()))
+                    {
+                        state.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            @Override
+            public void write(final OutputStream out) throws IOException
+            {
+                state.store(out, "White Source inventory state");
+            }
+        });
+    }
+
+    public File getStateFile()
+    {
+        return stateFile;
+    }
+
+    /**
+     * @return the state saved in the given file, empty if it can't be read.
+     */
+    private Properties read(final File file)
+    {
+        final Properties result = new Properties();
+        if (!file.isFile())
+        {
+            return result;
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            result.load(in);
+        }
+        catch (IOException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring unreadable state file " + file + ": "
+                    + e.getMessage()));
+            result.clear();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return result;
+    }
+
+    static String projectKey(final AgentProjectInfo projectInfo)
+    {
+        if (projectInfo.getProjectToken() != null && projectInfo.getProjectToken().length() > 0)
+        {
+            return "token:" + projectInfo.getProjectToken();
+        }
+
+        return "project:" + describe(projectInfo.getCoordinates());
+    }
+
+    /**
+     * @return the hex SHA-1 of the API key and everything sent for the project, independent of the order of its
+     *         dependencies.
+     */
+    public static String digest(final String apiKey, final AgentProjectInfo projectInfo)
+    {
+        final List<String> dependencies = new ArrayList<String>();
+        for (DependencyInfo dependency : projectInfo.getDependencies())
+        {
+            final List<String> exclusions = new ArrayList<String>();
+            for (ExclusionInfo exclusion : dependency.getExclusions())
+            {
+                exclusions.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+            }
+            Collections.sort(exclusions);
+
+            dependencies.add(join(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion(),
+                    dependency.getClassifier(), dependency.getType(), dependency.getScope(),
+                    String.valueOf(dependency.getOptional()), dependency.getSystemPath(), dependency.getSha1(),
+                    exclusions.toString()));
+        }
+        Collections.sort(dependencies);
+
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(join(apiKey, projectInfo.getProjectToken(), describe(projectInfo.getCoordinates()),
+                    describe(projectInfo.getParentCoordinates())).getBytes("UTF-8"));
+            for (String dependency : dependencies)
+            {
+                digest.update((byte) '\n');
+                digest.update(dependency.getBytes("UTF-8"));
+            }
+
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not supported by this JVM!", e);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException("UTF-8 is not supported by this JVM!", e);
+        }
+    }
+
+    private static String describe(final Coordinates coordinates)
+    {
+        if (coordinates == null)
+        {
+            return null;
+        }
+
+        return join(coordinates.getGroupId(), coordinates.getArtifactId(), coordinates.getVersion());
+    }
+
+    private static String join(final String... fields)
+    {
+        final StringBuilder result = new StringBuilder();
+        for (String field : fields)
+        {
+            result.append(field).append(FIELD_SEPARATOR);
+        }
+
+        return result.toString();
+    }
+}
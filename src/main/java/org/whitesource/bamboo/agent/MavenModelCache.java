@@ -0,0 +1,679 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.api.ChecksumUtils;
+
+/**
+ * Cache of effective Maven models, keyed by POM path and the SHA-1 of its content.
+ *
+ * An entry also records the checksums of the parent and imported BOM POMs it was built from, local or in the local
+ * repository, and a digest of the environment which decides profile activation and interpolation: the JDK and OS, the
+ * settings.xml files, the Maven version and the values of the system properties and environment variables referenced
+ * by these POMs and settings files. It is only reused while all of them are unchanged. Models depending on a SNAPSHOT
+ * from a repository, on a POM which isn't in the local repository, or on a profile activated by a file are never
+ * saved, since their content may change without notice. Entries are loaded from and saved to the cache file, if any,
+ * so unchanged POMs are reused across later builds on the agent. All methods are thread safe.
+ */
+public class MavenModelCache
+{
+    public static final String DEFAULT_CACHE_FILE = "maven-models.bin";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final String LOG_COMPONENT = "MavenModelCache";
+    private static final int MAGIC = 0x5753534d; // "WSSM"
+    private static final int FORMAT_VERSION = 3;
+    private static final String SNAPSHOT = "SNAPSHOT";
+    private static final String IMPORT_SCOPE = "import";
+    private static final String EXPRESSION = "${";
+    private static final String SETTINGS_FILE = "settings.xml";
+    private static final String ENV_PREFIX = "env.";
+    private static final String[] PLATFORM_PROPERTIES = { "java.home", "java.vendor", "java.version",
+            "java.specification.version", "os.name", "os.arch", "os.version", "user.home", "maven.home",
+            "maven.repo.local" };
+    private static final Pattern REFERENCE = Pattern.compile(
+            "\\$\\{([^}]+)\\}|<property>\\s*<name>\\s*!?([^<\\s]+)\\s*</name>");
+
+    private final Logger log = LoggerFactory.getLogger(MavenModelCache.class);
+    private final File cacheFile;
+    private final String environment;
+    private final LinkedHashMap<String, CachedModel> entries;
+    private final Map<String, String> pomChecksums = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private boolean modified;
+
+    /**
+     * @param cacheFile
+     *            - file to load and save the cache, null to keep it in memory only.
+     */
+    public MavenModelCache(final File cacheFile, final int maxEntries)
+    {
+        this(cacheFile, maxEntries, environmentDigest());
+    }
+
+    /**
+     * @param environment
+     *            - digest of the environment the models are built in, entries built in another one are not reused.
+     *            The values of the properties referenced by the POMs are checked in addition.
+     */
+    public MavenModelCache(final File cacheFile, final int maxEntries, final String environment)
+    {
+        this.cacheFile = cacheFile;
+        this.environment = environment;
+        this.entries = new LinkedHashMap<String, CachedModel>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedModel> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cache stored in the agent's data directory, loaded from disk if present.
+     */
+    public static MavenModelCache openDefault()
+    {
+        MavenModelCache cache = new MavenModelCache(new File(WssUtils.getAgentDataDirectory(), DEFAULT_CACHE_FILE),
+                DEFAULT_MAX_ENTRIES);
+        cache.load();
+
+        return cache;
+    }
+
+    /**
+     * @return a copy of the cached effective model of the given POM, or null if there is no valid entry.
+     */
+    public Model get(final File pom)
+    {
+        final String path = canonicalPath(pom);
+        final String checksum = pomChecksum(path);
+        CachedModel entry = null;
+        if (checksum != null)
+        {
+            synchronized (this)
+            {
+                entry = entries.get(path);
+            }
+        }
+
+        if (entry != null && checksum.equals(entry.checksum) && isLineageUnchanged(entry)
+                && entryEnvironment(entry.references).equals(entry.environment))
+        {
+            hits.incrementAndGet();
+            final Model model = entry.model.clone();
+            model.setPomFile(pom);
+            return model;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(final File pom, final ModelBuildingResult result)
+    {
+        final String path = canonicalPath(pom);
+        final String checksum = pomChecksum(path);
+        final List<String> modelIds = result.getModelIds();
+        if (checksum == null || modelIds == null || modelIds.isEmpty())
+        {
+            return;
+        }
+
+        boolean persistent = true;
+        final List<String[]> lineage = new ArrayList<String[]>();
+        for (int i = 0; i < modelIds.size(); i++)
+        {
+            final String modelId = modelIds.get(i);
+            final Model rawModel = result.getRawModel(modelId);
+            if (rawModel != null)
+            {
+                persistent &= !hasFileActivation(rawModel);
+                persistent &= addImports(rawModel.getDependencyManagement(), lineage);
+                if (rawModel.getProfiles() != null)
+                {
+                    for (Profile profile : rawModel.getProfiles())
+                    {
+                        persistent &= addImports(profile.getDependencyManagement(), lineage);
+                    }
+                }
+            }
+
+            // the POM itself is checked separately, the super POM is part of Maven
+            if (i == 0 || modelId.length() == 0)
+            {
+                continue;
+            }
+
+            if (rawModel != null && rawModel.getPomFile() != null)
+            {
+                final String parentPath = canonicalPath(rawModel.getPomFile());
+                final String parentChecksum = pomChecksum(parentPath);
+                if (parentChecksum == null)
+                {
+                    return;
+                }
+                lineage.add(new String[] { parentPath, parentChecksum });
+            }
+            else
+            {
+                persistent &= !modelId.contains(SNAPSHOT) && addRepositoryPom(modelId, lineage);
+            }
+        }
+
+        final Set<String> references = new TreeSet<String>();
+        try
+        {
+            addReferences(FileUtils.readFileToString(new File(path), "UTF-8"), references);
+            for (String[] parent : lineage)
+            {
+                addReferences(FileUtils.readFileToString(new File(parent[0]), "UTF-8"), references);
+            }
+        }
+        catch (IOException e)
+        {
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, "Can't read " + path + " or its parents: " + e.getMessage()));
+            return;
+        }
+
+        final List<String> referenceList = new ArrayList<String>(references);
+        final CachedModel entry = new CachedModel(checksum, entryEnvironment(referenceList), referenceList, lineage,
+                result.getEffectiveModel().clone(), persistent);
+        synchronized (this)
+        {
+            entries.put(path, entry);
+            modified |= persistent;
+        }
+    }
+
+    public synchronized void load()
+    {
+        entries.clear();
+        if (cacheFile != null)
+        {
+            entries.putAll(read(cacheFile));
+        }
+        modified = false;
+    }
+
+    /**
+     * Saves the persistent entries, merged with the entries other agents saved since the cache was loaded. The file is
+     * accessible to its owner only, since effective models are interpolated and may contain secrets from environment
+     * variables or system properties.
+     */
+    public synchronized void save() throws IOException
+    {
+        if (cacheFile == null || !modified)
+        {
+            return;
+        }
+
+        AgentDataFile.save(cacheFile, new AgentDataFile.Content()
+        {
+            @Override
+            public void merge(final File file)
+            {
+                final Map<String, CachedModel> ours = new LinkedHashMap<String, CachedModel>(entries);
+                entries.clear();
+                entries.putAll(read(file));
+                for (Map.Entry<String, CachedModel> mapEntry : ours.entrySet())
+                {
+                    if (mapEntry.getValue().persistent || !entries.containsKey(mapEntry.getKey()))
+                    {
+                        entries.put(mapEntry.getKey(), mapEntry.getValue());
+                    }
+                }
+            }
+
+            @Override
+            public void write(final OutputStream stream) throws IOException
+            {
+                final DataOutputStream out = new DataOutputStream(stream);
+                final MavenXpp3Writer writer = new MavenXpp3Writer();
+                final ByteArrayOutputStream model = new ByteArrayOutputStream();
+                int count = 0;
+                for (CachedModel entry : entries.values())
+                {
+                    count += entry.persistent ? 1 : 0;
+                }
+
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(count);
+                // least recently used first, so the order survives a reload
+                for (Map.Entry<String, CachedModel> mapEntry : entries.entrySet())
+                {
+                    final CachedModel entry = mapEntry.getValue();
+                    if (!entry.persistent)
+                    {
+                        continue;
+                    }
+
+                    out.writeUTF(mapEntry.getKey());
+                    out.writeUTF(entry.checksum);
+                    out.writeUTF(entry.environment);
+                    out.writeInt(entry.references.size());
+                    for (String reference : entry.references)
+                    {
+                        out.writeUTF(reference);
+                    }
+                    out.writeInt(entry.lineage.size());
+                    for (String[] parent : entry.lineage)
+                    {
+                        out.writeUTF(parent[0]);
+                        out.writeUTF(parent[1]);
+                    }
+                    model.reset();
+                    writer.write(model, entry.model);
+                    out.writeInt(model.size());
+                    model.writeTo(out);
+                }
+                out.flush();
+            }
+        }, true);
+
+        modified = false;
+    }
+
+    public int getHits()
+    {
+        return hits.get();
+    }
+
+    public int getMisses()
+    {
+        return misses.get();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public File getCacheFile()
+    {
+        return cacheFile;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getHits() + " hits, " + getMisses() + " misses, " + size() + " entries";
+    }
+
+    /**
+     * @return the entries saved in the given file, least recently used first, empty if it can't be read.
+     */
+    private Map<String, CachedModel> read(final File file)
+    {
+        final Map<String, CachedModel> result = new LinkedHashMap<String, CachedModel>();
+        if (!file.isFile())
+        {
+            return result;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring incompatible cache file " + file));
+                return result;
+            }
+
+            final MavenXpp3Reader reader = new MavenXpp3Reader();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                final String path = in.readUTF();
+                final String checksum = in.readUTF();
+                final String entryEnvironment = in.readUTF();
+                final int referenceCount = in.readInt();
+                final List<String> references = new ArrayList<String>(referenceCount);
+                for (int j = 0; j < referenceCount; j++)
+                {
+                    references.add(in.readUTF());
+                }
+                final int lineageSize = in.readInt();
+                final List<String[]> lineage = new ArrayList<String[]>(lineageSize);
+                for (int j = 0; j < lineageSize; j++)
+                {
+                    lineage.add(new String[] { in.readUTF(), in.readUTF() });
+                }
+                final byte[] model = new byte[in.readInt()];
+                in.readFully(model);
+                result.put(path, new CachedModel(checksum, entryEnvironment, references, lineage, reader.read(
+                        new ByteArrayInputStream(model)), true));
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring unreadable cache file " + file + ": "
+                    + e.getMessage()));
+            result.clear();
+        }
+        catch (XmlPullParserException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring unreadable cache file " + file + ": "
+                    + e.getMessage()));
+            result.clear();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return result;
+    }
+
+    private boolean isLineageUnchanged(final CachedModel entry)
+    {
+        for (String[] parent : entry.lineage)
+        {
+            if (!parent[1].equals(pomChecksum(parent[0])))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean hasFileActivation(final Model rawModel)
+    {
+        if (rawModel.getProfiles() != null)
+        {
+            for (Profile profile : rawModel.getProfiles())
+            {
+                if (profile.getActivation() != null && profile.getActivation().getFile() != null)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the BOMs imported by a dependency management section to the lineage.
+     *
+     * @return false if one of them may change without notice, i.e. the model must not be saved.
+     */
+    private boolean addImports(final DependencyManagement dependencyManagement, final List<String[]> lineage)
+    {
+        if (dependencyManagement == null || dependencyManagement.getDependencies() == null)
+        {
+            return true;
+        }
+
+        boolean persistent = true;
+        for (Dependency dependency : dependencyManagement.getDependencies())
+        {
+            if (IMPORT_SCOPE.equals(dependency.getScope()))
+            {
+                persistent &= dependency.getVersion() != null && !dependency.getVersion().contains(SNAPSHOT)
+                        && addRepositoryPom(dependency.getGroupId() + ":" + dependency.getArtifactId() + ":"
+                                + dependency.getVersion(), lineage);
+            }
+        }
+
+        return persistent;
+    }
+
+    /**
+     * Adds the POM of a release from the local repository to the lineage.
+     *
+     * @return false if the POM can't be found, e.g. since its coordinates are still expressions.
+     */
+    private boolean addRepositoryPom(final String modelId, final List<String[]> lineage)
+    {
+        final String[] coordinates = modelId.split(":");
+        if (coordinates.length != 3 || modelId.contains(EXPRESSION))
+        {
+            return false;
+        }
+
+        final File pom = new File(localRepository(), coordinates[0].replace('.', '/') + "/" + coordinates[1] + "/"
+                + coordinates[2] + "/" + coordinates[1] + "-" + coordinates[2] + ".pom");
+        final String path = canonicalPath(pom);
+        final String checksum = pom.isFile() ? pomChecksum(path) : null;
+        if (checksum == null)
+        {
+            return false;
+        }
+
+        lineage.add(new String[] { path, checksum });
+        return true;
+    }
+
+    private static File localRepository()
+    {
+        final String localRepository = System.getProperty("maven.repo.local");
+        if (localRepository != null)
+        {
+            return new File(localRepository);
+        }
+
+        return new File(System.getProperty("user.home"), ".m2/repository");
+    }
+
+    /**
+     * @return the hex SHA-1 of everything in the agent's environment that can change an effective model built from
+     *         unchanged POMs, except the properties referenced by the POMs themselves: the Maven version, the JDK and
+     *         OS, the settings.xml files and the properties and environment variables they reference.
+     */
+    public static String environmentDigest()
+    {
+        try
+        {
+            final MessageDigest digest = newDigest();
+            final Package modelBuilder = ModelBuildingResult.class.getPackage();
+            digest.update(String.valueOf(modelBuilder == null ? null : modelBuilder.getImplementationVersion())
+                    .getBytes("UTF-8"));
+            final Set<String> references = new TreeSet<String>(Arrays.asList(PLATFORM_PROPERTIES));
+            references.add(ENV_PREFIX + "M2_HOME");
+
+            final List<File> settingsFiles = new ArrayList<File>();
+            settingsFiles.add(new File(System.getProperty("user.home"), ".m2/" + SETTINGS_FILE));
+            for (String mavenHome : new String[] { System.getProperty("maven.home"), System.getenv("M2_HOME") })
+            {
+                if (mavenHome != null)
+                {
+                    settingsFiles.add(new File(mavenHome, "conf/" + SETTINGS_FILE));
+                }
+            }
+            for (File settingsFile : settingsFiles)
+            {
+                digest.update((byte) '\n');
+                if (settingsFile.isFile())
+                {
+                    final byte[] settings = FileUtils.readFileToByteArray(settingsFile);
+                    digest.update(settings);
+                    addReferences(new String(settings, "UTF-8"), references);
+                }
+            }
+            updateDigest(digest, references);
+
+            return toHex(digest);
+        }
+        catch (IOException e)
+        {
+            // an unreadable settings file, don't reuse any model
+            return "unknown:" + System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the environment of an entry referencing the given properties, as of now.
+     */
+    private String entryEnvironment(final List<String> references)
+    {
+        try
+        {
+            final MessageDigest digest = newDigest();
+            updateDigest(digest, references);
+            return environment + ":" + toHex(digest);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException("UTF-8 is not supported by this JVM!", e);
+        }
+    }
+
+    /**
+     * Adds the names of the properties referenced by expressions or property activations in a POM or settings file.
+     * Environment variables are prefixed with <code>env.</code>, as in expressions.
+     */
+    private static void addReferences(final String text, final Set<String> references)
+    {
+        final Matcher matcher = REFERENCE.matcher(text);
+        while (matcher.find())
+        {
+            references.add(matcher.group(1) != null ? matcher.group(1).trim() : matcher.group(2));
+        }
+    }
+
+    private static void updateDigest(final MessageDigest digest, final Iterable<String> references)
+            throws UnsupportedEncodingException
+    {
+        for (String reference : references)
+        {
+            final String value = reference.startsWith(ENV_PREFIX) ? System.getenv(reference.substring(
+                    ENV_PREFIX.length())) : System.getProperty(reference);
+            digest.update((reference + "=" + value + "\n").getBytes("UTF-8"));
+        }
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not supported by this JVM!", e);
+        }
+    }
+
+    private static String toHex(final MessageDigest digest)
+    {
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the checksum of a POM, calculated once per cache instance, or null if it can't be read.
+     */
+    private String pomChecksum(final String path)
+    {
+        String checksum = pomChecksums.get(path);
+        if (checksum == null)
+        {
+            try
+            {
+                checksum = ChecksumUtils.calculateSHA1(new File(path));
+                pomChecksums.put(path, checksum);
+            }
+            catch (IOException e)
+            {
+                log.debug(WssUtils.logMsg(LOG_COMPONENT, "Can't read " + path + ": " + e.getMessage()));
+            }
+        }
+
+        return checksum;
+    }
+
+    private static String canonicalPath(final File file)
+    {
+        try
+        {
+            return file.getCanonicalPath();
+        }
+        catch (IOException e)
+        {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static final class CachedModel
+    {
+        private final String checksum;
+        private final String environment;
+        private final List<String> references;
+        private final List<String[]> lineage;
+        private final Model model;
+        private final boolean persistent;
+
+        private CachedModel(final String checksum, final String environment, final List<String> references,
+                final List<String[]> lineage, final Model model, final boolean persistent)
+        {
+            this.checksum = checksum;
+            this.environment = environment;
+            this.references = references;
+            this.lineage = lineage;
+            this.model = model;
+            this.persistent = persistent;
+        }
+    }
+}
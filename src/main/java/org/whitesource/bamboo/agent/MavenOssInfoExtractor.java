@@ -22,13 +22,20 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Exclusion;
 import org.apache.maven.model.Parent;
 import org.apache.maven.project.MavenProject;
-import org.whitesource.agent.api.ChecksumUtils;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.agent.api.model.Coordinates;
 import org.whitesource.agent.api.model.DependencyInfo;
@@ -37,11 +44,21 @@ import org.whitesource.agent.api.model.ExclusionInfo;
 public class MavenOssInfoExtractor extends BaseOssInfoExtractor
 {
     private static final String LOG_COMPONENT = "MavenExtractor";
+    private static final char LOOKUP_KEY_NULL = '\0';
 
     protected Map<String, String> moduleTokens;
     protected boolean ignorePomModules;
     private MavenParser mavenParser;
     protected java.io.File checkoutDirectory;
+    protected int parallelism;
+    protected MavenModelCache modelCache;
+    // checksums by artifact path, shared by all modules of one extraction since most of them use the same jars
+    private ConcurrentMap<String, Future<String>> artifactChecksums;
+    private AtomicInteger artifactLookups;
+    protected boolean useSidecars;
+    protected boolean verifySidecars;
+    private ChecksumSource sidecarSource;
+    private AtomicInteger sidecarChecksums;
 
     /**
      * Constructor
@@ -50,12 +67,52 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor
      */
     public MavenOssInfoExtractor(final String projectToken, final String moduleTokens, final String includes,
             final String excludes, final boolean ignorePomModules, final java.io.File checkoutDirectory)
+    {
+        this(projectToken, moduleTokens, includes, excludes, ignorePomModules, checkoutDirectory, 1);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param parallelism
+     *            - number of threads processing modules concurrently, 1 to process them one after another.
+     */
+    public MavenOssInfoExtractor(final String projectToken, final String moduleTokens, final String includes,
+            final String excludes, final boolean ignorePomModules, final java.io.File checkoutDirectory,
+            final int parallelism)
     {
         super(projectToken, includes, excludes);
 
         this.ignorePomModules = ignorePomModules;
         this.moduleTokens = WssUtils.splitParametersMap(moduleTokens);
         this.checkoutDirectory = checkoutDirectory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param modelCache
+     *            - cache of effective models persisted across builds, null to build every POM.
+     */
+    public void setModelCache(final MavenModelCache modelCache)
+    {
+        this.modelCache = modelCache;
+    }
+
+    public MavenModelCache getModelCache()
+    {
+        return modelCache;
+    }
+
+    /**
+     * @param useSidecars
+     *            - read artifact checksums from the '.sha1' files in the local repository where available.
+     * @param verifySidecars
+     *            - calculate the checksums anyway and warn about '.sha1' files which don't match.
+     */
+    public void setChecksumSidecars(final boolean useSidecars, final boolean verifySidecars)
+    {
+        this.useSidecars = useSidecars;
+        this.verifySidecars = verifySidecars;
     }
 
     @Override
@@ -63,6 +120,7 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor
     {
         log.info(WssUtils.logMsg(LOG_COMPONENT, "Collection started"));
 
+        long startTime = System.currentTimeMillis();
         mavenParser = configureMavenParser(checkoutDirectory);
 
         Collection<MavenProject> projects = new ArrayList<MavenProject>();
@@ -70,27 +128,82 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor
         projects.add(mavenProject);
         projects.addAll(mavenParser.getModules(mavenProject));
 
+        log.info(WssUtils.logMsg(LOG_COMPONENT, "Total Maven reactor parsing time for " + projects.size()
+                + " projects is " + (System.currentTimeMillis() - startTime) + " [msec]"));
+        if (modelCache != null)
+        {
+            log.info(WssUtils.logMsg(LOG_COMPONENT, "Maven model cache: " + modelCache));
+        }
+
+        artifactChecksums = new ConcurrentHashMap<String, Future<String>>();
+        artifactLookups = new AtomicInteger();
+        sidecarChecksums = new AtomicInteger();
+        sidecarSource = useSidecars ? new SidecarChecksumSource(verifySidecars ? calculatingSource() : null) : null;
+
         Collection<AgentProjectInfo> projectInfos = new ArrayList<AgentProjectInfo>();
         // Collect OSS usage information
-        for (MavenProject project : projects)
+        HashingPipeline pipeline = new HashingPipeline(parallelism);
+        try
         {
-            if (shouldProcess(project))
+            // futures are kept in project order, so the result order doesn't depend on thread scheduling
+            List<Future<AgentProjectInfo>> pending = new ArrayList<Future<AgentProjectInfo>>();
+            for (final MavenProject project : projects)
             {
-                projectInfos.add(processProject(project));
+                if (shouldProcess(project))
+                {
+                    pending.add(pipeline.submit(new Callable<AgentProjectInfo>()
+                    {
+                        @Override
+                        public AgentProjectInfo call()
+                        {
+                            return processProject(project);
+                        }
+                    }));
+                }
+                else
+                {
+                    log.info(WssUtils.logMsg(LOG_COMPONENT, "skipping " + project.getId()));
+                }
+
+                // hand over completed projects right away, any listener may process them meanwhile
+                while (projectInfos.size() < pending.size() && pending.get(projectInfos.size()).isDone())
+                {
+                    collectProjectInfo(projectInfos, pending.get(projectInfos.size()));
+                }
             }
-            else
+
+            while (projectInfos.size() < pending.size())
             {
-                log.info(WssUtils.logMsg(LOG_COMPONENT, "skipping " + project.getId()));
+                collectProjectInfo(projectInfos, pending.get(projectInfos.size()));
             }
         }
+        finally
+        {
+            pipeline.shutdown();
+        }
+
+        log.info(WssUtils.logMsg(LOG_COMPONENT, "Resolved checksums of " + artifactChecksums.size()
+                + " distinct artifact files (" + sidecarChecksums.get() + " from .sha1 files) for "
+                + artifactLookups.get() + " resolved dependencies"));
         logAgentProjectInfos(projectInfos);
 
         return projectInfos;
     }
 
+    private void collectProjectInfo(final Collection<AgentProjectInfo> projectInfos,
+            final Future<AgentProjectInfo> future)
+    {
+        AgentProjectInfo projectInfo = HashingPipeline.await(future);
+        projectInfos.add(projectInfo);
+        notifyProjectInfoExtracted(projectInfo);
+    }
+
     private MavenParser configureMavenParser(File workingDirectory)
     {
         MavenParser mavenParser = new MavenParser();
+        mavenParser.setParallelism(parallelism);
+        // NOTE: no cache by default, as each POM is built only once per extraction anyway.
+        mavenParser.setModelCache(modelCache);
 
         File pom = new File(workingDirectory, MavenParser.DEFAULT_MAVEN_POM);
         log.info(WssUtils.logMsg(LOG_COMPONENT, "Parsing Maven POM " + pom.getPath()));
@@ -170,8 +283,9 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor
         }
 
         // dependencies
-        Map<Dependency, Artifact> lut = createLookupTable(project);
-        for (Dependency dependency : mavenParser.getDependencies(project))
+        final Set<Dependency> dependencies = mavenParser.getDependencies(project);
+        Map<Dependency, Artifact> lut = createLookupTable(dependencies, mavenParser.getDependencyArtifacts(project));
+        for (Dependency dependency : dependencies)
         {
             DependencyInfo dependencyInfo = getDependencyInfo(dependency);
 
@@ -183,7 +297,7 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor
                 {
                     try
                     {
-                        dependencyInfo.setSha1(ChecksumUtils.calculateSHA1(artifactFile));
+                        dependencyInfo.setSha1(getArtifactSha1(artifactFile));
                     }
                     catch (IOException e)
                     {
@@ -201,66 +315,142 @@ public class MavenOssInfoExtractor extends BaseOssInfoExtractor
         return projectInfo;
     }
 
-    private Coordinates extractCoordinates(MavenProject mavenProject)
+    /**
+     * Calculates the checksum of an artifact once per extraction. The first module asking for a file hashes it, any
+     * other module concurrently asking for the same file waits for that result.
+     */
+    private String getArtifactSha1(final File artifactFile) throws IOException
     {
-        return new Coordinates(mavenProject.getGroupId(), mavenProject.getArtifactId(), mavenProject.getVersion());
+        artifactLookups.incrementAndGet();
+
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>()
+        {
+            @Override
+            public String call() throws IOException
+            {
+                return resolveArtifactSha1(artifactFile);
+            }
+        });
+        Future<String> checksum = artifactChecksums.putIfAbsent(artifactFile.getAbsolutePath(), task);
+        if (checksum == null)
+        {
+            task.run();
+            checksum = task;
+        }
+
+        try
+        {
+            return checksum.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for checksum of " + artifactFile, e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Checksum calculation failed!", e.getCause());
+        }
     }
 
-    private Coordinates extractParentCoordinates(Parent parent)
+    private ChecksumSource calculatingSource()
     {
-        return new Coordinates(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+        return new ChecksumSource()
+        {
+            @Override
+            public String getSha1(final File file) throws IOException
+            {
+                return calculateSha1(file);
+            }
+        };
     }
 
-    private Map<Dependency, Artifact> createLookupTable(MavenProject project)
+    /**
+     * Prefers the repository's checksum file of an artifact, falling back to calculating the checksum.
+     */
+    private String resolveArtifactSha1(final File artifactFile) throws IOException
     {
-        Map<Dependency, Artifact> lut = new HashMap<Dependency, Artifact>();
-
-        for (Dependency dependency : mavenParser.getDependencies(project))
+        if (sidecarSource != null)
         {
-            for (Artifact dependencyArtifact : mavenParser.getDependencyArtifacts(project))
+            final String sha1 = sidecarSource.getSha1(artifactFile);
+            if (sha1 != null)
             {
-                if (match(dependency, dependencyArtifact))
-                {
-                    lut.put(dependency, dependencyArtifact);
-                }
+                sidecarChecksums.incrementAndGet();
+                return sha1;
             }
         }
 
-        return lut;
+        return calculateSha1(artifactFile);
     }
 
-    private boolean match(Dependency dependency, Artifact artifact)
+    private Coordinates extractCoordinates(MavenProject mavenProject)
     {
-        boolean match = dependency.getGroupId().equals(artifact.getGroupId())
-                && dependency.getArtifactId().equals(artifact.getArtifactId())
-                && dependency.getVersion().equals(artifact.getVersion());
+        return new Coordinates(mavenProject.getGroupId(), mavenProject.getArtifactId(), mavenProject.getVersion());
+    }
 
-        if (match)
+    private Coordinates extractParentCoordinates(Parent parent)
+    {
+        return new Coordinates(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+    }
+
+    /**
+     * Matches dependencies to their resolved artifacts via a hash index, i.e. in O(dependencies + artifacts).
+     * 
+     * A dependency matches an artifact if groupId, artifactId, version and classifier are equal (a missing classifier
+     * only matches a missing one), and the types are equal, where a missing dependency type also matches 'jar'. If
+     * several artifacts match, the last one wins, as it did with the former nested loop.
+     */
+    public static Map<Dependency, Artifact> createLookupTable(final Collection<Dependency> dependencies,
+            final Collection<Artifact> artifacts)
+    {
+        List<Artifact> ordered = new ArrayList<Artifact>(artifacts);
+        Map<String, Integer> index = new HashMap<String, Integer>(ordered.size() * 2);
+        for (int i = 0; i < ordered.size(); i++)
         {
-            if (dependency.getClassifier() == null)
-            {
-                match = artifact.getClassifier() == null;
-            }
-            else
-            {
-                match = dependency.getClassifier().equals(artifact.getClassifier());
-            }
+            Artifact artifact = ordered.get(i);
+            index.put(lookupKey(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+                    artifact.getClassifier(), artifact.getType()), i);
         }
 
-        if (match)
+        Map<Dependency, Artifact> lut = new HashMap<Dependency, Artifact>(dependencies.size() * 2);
+        for (Dependency dependency : dependencies)
         {
-            String type = artifact.getType();
+            Integer position = index.get(lookupKey(dependency.getGroupId(), dependency.getArtifactId(),
+                    dependency.getVersion(), dependency.getClassifier(), dependency.getType()));
             if (dependency.getType() == null)
             {
-                match = type == null || type.equals("jar");
+                Integer jarPosition = index.get(lookupKey(dependency.getGroupId(), dependency.getArtifactId(),
+                        dependency.getVersion(), dependency.getClassifier(), "jar"));
+                if (jarPosition != null && (position == null || jarPosition > position))
+                {
+                    position = jarPosition;
+                }
             }
-            else
+
+            if (position != null)
             {
-                match = dependency.getType().equals(type);
+                lut.put(dependency, ordered.get(position));
             }
         }
 
-        return match;
+        return lut;
+    }
+
+    private static String lookupKey(final String groupId, final String artifactId, final String version,
+            final String classifier, final String type)
+    {
+        StringBuilder key = new StringBuilder(128);
+        for (String part : new String[] { groupId, artifactId, version, classifier, type })
+        {
+            // distinguishes a missing value from an empty one
+            key.append(part == null ? LOOKUP_KEY_NULL : part).append(':');
+        }
+
+        return key.toString();
     }
 
     private DependencyInfo getDependencyInfo(Dependency dependency)
@@ -1,12 +1,16 @@
 package org.whitesource.bamboo.agent;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.log4j.Logger;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
 import org.apache.maven.model.building.ModelBuildingResult;
 import org.apache.maven.project.MavenProject;
 
@@ -23,19 +27,55 @@ public class MavenParser
     public static final String DEFAULT_MAVEN_POM = "pom.xml";
     private MavenEmbedderService mavenEmbedderService;
     private MavenProject mavenProject;
+    private int parallelism = 1;
+    private MavenModelCache modelCache;
+    // shared by all modules, rather than configuring the embedder anew for each of them
+    private final MavenConfiguration mavenConfiguration;
+
+    // NOTE: the embedder isn't documented to be thread safe, hence parallel workers use their own instance each.
+    private final ThreadLocal<MavenEmbedderService> workerEmbedderServices = new ThreadLocal<MavenEmbedderService>()
+    {
+        @Override
+        protected MavenEmbedderService initialValue()
+        {
+            return new MavenEmbedderServiceImpl();
+        }
+    };
 
     public MavenParser()
     {
         mavenEmbedderService = new MavenEmbedderServiceImpl();
+        mavenConfiguration = MavenConfiguration.builder().build();
+    }
+
+    /**
+     * @param parallelism
+     *            - number of threads building module models concurrently, 1 to build them one after another.
+     */
+    public void setParallelism(final int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param modelCache
+     *            - cache of effective models to consult before building a POM, null to always build it.
+     */
+    public void setModelCache(final MavenModelCache modelCache)
+    {
+        this.modelCache = modelCache;
+    }
+
+    public MavenModelCache getModelCache()
+    {
+        return modelCache;
     }
 
     public void parseProject(File file)
     {
         try
         {
-            MavenConfiguration mavenConfiguration = MavenConfiguration.builder().build();
-            ModelBuildingResult modelBuildingResult = mavenEmbedderService.buildModel(file, mavenConfiguration);
-            mavenProject = new MavenProject(modelBuildingResult.getEffectiveModel());
+            mavenProject = buildProject(mavenEmbedderService, file);
         }
         catch (MavenEmbedderException e)
         {
@@ -44,33 +84,141 @@ public class MavenParser
         }
     }
 
+    /**
+     * @return all modules below the given project, recursively, in depth-first order. Modules whose POM can't be read
+     *         are skipped.
+     */
     protected Set<MavenProject> getModules(MavenProject mavenProject)
     {
-        Set<MavenProject> modules = Sets.newHashSet();
+        Set<MavenProject> modules = Sets.newLinkedHashSet();
 
-        // recursively add child modules
-        for (String module : mavenProject.getModules())
+        if (parallelism > 1)
         {
-            File pom = new File(mavenProject.getModel().getPomFile().getParent(), module + File.separator
-                    + DEFAULT_MAVEN_POM);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
             try
             {
-                MavenConfiguration mavenConfiguration = MavenConfiguration.builder().build();
-                ModelBuildingResult modelBuildingResult = mavenEmbedderService.buildModel(pom, mavenConfiguration);
-                MavenProject project = new MavenProject(modelBuildingResult.getEffectiveModel());
-                modules.add(project);
-                modules.addAll(getModules(project));
-
+                modules.addAll(pool.invoke(new ModulesTask(mavenProject)));
+            }
+            finally
+            {
+                pool.shutdown();
             }
-            catch (MavenEmbedderException e)
+        }
+        else
+        {
+            // recursively add child modules
+            for (String module : mavenProject.getModules())
             {
-                log.warn(WssUtils.logMsg(LOG_COMPONENT, "Can't read POM for module " + module + ": " + e.getMessage()));
+                MavenProject project = buildModule(mavenEmbedderService, mavenProject, module);
+                if (project != null)
+                {
+                    modules.add(project);
+                    modules.addAll(getModules(project));
+                }
             }
         }
 
         return modules;
     }
 
+    private MavenProject buildModule(final MavenEmbedderService embedderService, final MavenProject parent,
+            final String module)
+    {
+        File pom = new File(parent.getModel().getPomFile().getParent(), module + File.separator + DEFAULT_MAVEN_POM);
+        try
+        {
+            return buildProject(embedderService, pom);
+        }
+        catch (MavenEmbedderException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Can't read POM for module " + module + ": " + e.getMessage()));
+        }
+        catch (RuntimeException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Can't read POM for module " + module + ": " + e));
+        }
+
+        return null;
+    }
+
+    private MavenProject buildProject(final MavenEmbedderService embedderService, final File pom)
+            throws MavenEmbedderException
+    {
+        Model model = modelCache == null ? null : modelCache.get(pom);
+        if (model == null)
+        {
+            ModelBuildingResult modelBuildingResult = embedderService.buildModel(pom, mavenConfiguration);
+            model = modelBuildingResult.getEffectiveModel();
+            if (modelCache != null)
+            {
+                modelCache.put(pom, modelBuildingResult);
+            }
+        }
+
+        return new MavenProject(model);
+    }
+
+    /**
+     * Builds the models of all sibling modules of a project concurrently, recursing into their modules likewise.
+     */
+    private class ModulesTask extends RecursiveTask<List<MavenProject>>
+    {
+        private static final long serialVersionUID = 1L;
+        private final MavenProject parent;
+
+        private ModulesTask(final MavenProject parent)
+        {
+            this.parent = parent;
+        }
+
+        @Override
+        protected List<MavenProject> compute()
+        {
+            List<ModuleTask> tasks = new ArrayList<ModuleTask>();
+            for (String module : parent.getModules())
+            {
+                tasks.add(new ModuleTask(parent, module));
+            }
+            invokeAll(tasks);
+
+            // joined in declaration order, so the result doesn't depend on scheduling
+            List<MavenProject> modules = new ArrayList<MavenProject>();
+            for (ModuleTask task : tasks)
+            {
+                modules.addAll(task.join());
+            }
+
+            return modules;
+        }
+    }
+
+    private class ModuleTask extends RecursiveTask<List<MavenProject>>
+    {
+        private static final long serialVersionUID = 1L;
+        private final MavenProject parent;
+        private final String module;
+
+        private ModuleTask(final MavenProject parent, final String module)
+        {
+            this.parent = parent;
+            this.module = module;
+        }
+
+        @Override
+        protected List<MavenProject> compute()
+        {
+            List<MavenProject> modules = new ArrayList<MavenProject>();
+            MavenProject project = buildModule(workerEmbedderServices.get(), parent, module);
+            if (project != null)
+            {
+                modules.add(project);
+                modules.addAll(new ModulesTask(project).compute());
+            }
+
+            return modules;
+        }
+    }
+
     protected Set<Artifact> getArtifacts(MavenProject mavenProject)
     {
         Set<Artifact> artifacts = Sets.newHashSet(mavenProject.getArtifact());
@@ -4,6 +4,7 @@
 package org.whitesource.bamboo.agent;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
@@ -118,6 +119,91 @@ public class ResourceUtils
         return relative.toString();
     }
 
+    /**
+     * Relative path maintained incrementally while walking down from a known ancestor directory, as a fast
+     * alternative to {@link #getRelativePath(String, String, String)} for this case: no regular expressions, no
+     * splitting and no file system access is involved, and the path is only turned into a String on demand.
+     */
+    public static class RelativePath implements CharSequence
+    {
+        private final StringBuilder path = new StringBuilder(256);
+        private final char separator;
+        private int[] lengths = new int[16];
+        private int depth;
+
+        public RelativePath(final char separator)
+        {
+            this.separator = separator;
+        }
+
+        /**
+         * Descends into the given child directory, i.e. appends its name and a trailing separator.
+         */
+        public void enter(final CharSequence directoryName)
+        {
+            if (depth == lengths.length)
+            {
+                lengths = Arrays.copyOf(lengths, depth * 2);
+            }
+            lengths[depth++] = path.length();
+            path.append(directoryName).append(separator);
+        }
+
+        /**
+         * Returns to the parent of the directory most recently entered.
+         */
+        public void leave()
+        {
+            path.setLength(lengths[--depth]);
+        }
+
+        /**
+         * Appends the name of a file temporarily.
+         * 
+         * @return the length to {@link #truncate(int)} to afterwards.
+         */
+        public int append(final CharSequence fileName)
+        {
+            final int length = path.length();
+            path.append(fileName);
+            return length;
+        }
+
+        public void truncate(final int length)
+        {
+            path.setLength(length);
+        }
+
+        public int getDepth()
+        {
+            return depth;
+        }
+
+        @Override
+        public int length()
+        {
+            return path.length();
+        }
+
+        @Override
+        public char charAt(final int index)
+        {
+            return path.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end)
+        {
+            return path.subSequence(start, end);
+        }
+
+        @Override
+        public String toString()
+        {
+            return path.toString();
+        }
+    }
+
     public static class PathResolutionException extends RuntimeException
     {
         PathResolutionException(String msg)
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manifest of the files found by the previous scan of a checkout: relative path, size, modification time and SHA-1.
+ * 
+ * The manifest also records the patterns it was scanned with and, for git working trees, the commit checked out at
+ * the time, so the next scan only needs to look at what changed since. One manifest per checkout directory is kept in
+ * the agent's data directory.
+ */
+public class ScanManifest
+{
+    public static final String MANIFEST_DIRECTORY = "scan-manifests";
+
+    private static final String LOG_COMPONENT = "ScanManifest";
+    private static final int MAGIC = 0x5753534e; // "WSSN"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Logger log = LoggerFactory.getLogger(ScanManifest.class);
+    private final File manifestFile;
+    private Map<String, Entry> entries = new HashMap<String, Entry>();
+    private String scanKey;
+    private String revision;
+
+    public ScanManifest(final File manifestFile)
+    {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * @return the manifest of the given checkout in the agent's data directory, loaded from disk if present.
+     */
+    public static ScanManifest open(final File checkoutDirectory)
+    {
+        final File directory = new File(WssUtils.getAgentDataDirectory(), MANIFEST_DIRECTORY);
+        final ScanManifest manifest = new ScanManifest(new File(directory, digest(checkoutDirectory) + ".bin"));
+        manifest.load();
+
+        return manifest;
+    }
+
+    public synchronized Entry get(final String path)
+    {
+        return entries.get(path);
+    }
+
+    public synchronized Set<String> getPaths()
+    {
+        return new HashSet<String>(entries.keySet());
+    }
+
+    /**
+     * @return the key of the patterns of the previous scan, null if there was none.
+     */
+    public synchronized String getScanKey()
+    {
+        return scanKey;
+    }
+
+    /**
+     * @return the commit checked out during the previous scan, null if unknown.
+     */
+    public synchronized String getRevision()
+    {
+        return revision;
+    }
+
+    /**
+     * Replaces the manifest by the result of a new scan.
+     */
+    public synchronized void update(final Map<String, Entry> newEntries, final String newScanKey,
+            final String newRevision)
+    {
+        entries = new HashMap<String, Entry>(newEntries);
+        scanKey = newScanKey;
+        revision = newRevision;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public File getManifestFile()
+    {
+        return manifestFile;
+    }
+
+    public synchronized void load()
+    {
+        entries.clear();
+        scanKey = null;
+        revision = null;
+        if (!manifestFile.isFile())
+        {
+            return;
+        }
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring incompatible manifest " + manifestFile));
+                return;
+            }
+
+            final String loadedScanKey = in.readUTF();
+            final String loadedRevision = in.readUTF();
+            final int count = in.readInt();
+            final Map<String, Entry> loadedEntries = new HashMap<String, Entry>(count * 2);
+            for (int i = 0; i < count; i++)
+            {
+                final String path = in.readUTF();
+                loadedEntries.put(path, new Entry(in.readLong(), in.readLong(), in.readUTF()));
+            }
+
+            entries = loadedEntries;
+            scanKey = loadedScanKey;
+            revision = loadedRevision.isEmpty() ? null : loadedRevision;
+        }
+        catch (IOException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Ignoring unreadable manifest " + manifestFile + ": "
+                    + e.getMessage()));
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    public synchronized void save() throws IOException
+    {
+        AgentDataFile.save(manifestFile, new AgentDataFile.Content()
+        {
+            @Override
+            public void merge(final File file)
+            {
+                // the manifest describes one scan as a whole
+            }
+
+            @Override
+            public void write(final OutputStream stream) throws IOException
+            {
+                final DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(scanKey == null ? "" : scanKey);
+                out.writeUTF(revision == null ? "" : revision);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().lastModified);
+                    out.writeUTF(entry.getValue().sha1);
+                }
+                out.flush();
+            }
+        });
+    }
+
+    @Override
+    public String toString()
+    {
+        return size() + " files" + (getRevision() == null ? "" : " at " + getRevision());
+    }
+
+    private static String digest(final File checkoutDirectory)
+    {
+        String path;
+        try
+        {
+            path = checkoutDirectory.getCanonicalPath();
+        }
+        catch (IOException e)
+        {
+            path = checkoutDirectory.getAbsolutePath();
+        }
+
+        try
+        {
+            final byte[] hash = MessageDigest.getInstance("SHA-1").digest(path.getBytes("UTF-8"));
+            final StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A file of the manifest.
+     */
+    public static final class Entry
+    {
+        private final long size;
+        private final long lastModified;
+        private final String sha1;
+
+        public Entry(final long size, final long lastModified, final String sha1)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+        }
+
+        /**
+         * @return whether the file still has the recorded size and modification time.
+         */
+        public boolean matches(final long currentSize, final long currentLastModified)
+        {
+            return size == currentSize && lastModified == currentLastModified;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        public String getSha1()
+        {
+            return sha1;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.client.WhitesourceService;
+
+/**
+ * Pool of White Source service clients shared by the tasks running on an agent, so subsequent and concurrent
+ * executions reuse kept-alive connections instead of opening new ones.
+ *
+ * Clients are keyed by their {@link ServiceSettings}. A checked out client is used by a single task only, since the
+ * underlying HTTP client isn't meant for concurrent requests; concurrent tasks get clients of their own, which are
+ * pooled as well once checked in. Clients idle for longer than the idle timeout are shut down. All methods are thread
+ * safe.
+ */
+public class ServiceClientPool
+{
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000L;
+
+    private static final String LOG_COMPONENT = "ServiceClientPool";
+    private static final ServiceClientPool SHARED = new ServiceClientPool(DEFAULT_IDLE_TIMEOUT);
+
+    private final Logger log = LoggerFactory.getLogger(ServiceClientPool.class);
+    private final long idleTimeout;
+    private final Map<ServiceSettings, LinkedList<IdleClient>> idleClients =
+            new HashMap<ServiceSettings, LinkedList<IdleClient>>();
+    private final Map<WhitesourceService, ServiceSettings> leasedClients =
+            new IdentityHashMap<WhitesourceService, ServiceSettings>();
+    private ScheduledExecutorService evictor;
+
+    /**
+     * @param idleTimeout
+     *            - milliseconds after which an unused client is shut down.
+     */
+    public ServiceClientPool(final long idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the pool shared by all tasks of this agent.
+     */
+    public static ServiceClientPool getShared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * @return a client for the current system proxy settings, see {@link ServiceSettings#fromSystemProperties()}.
+     */
+    public WhitesourceService checkout()
+    {
+        return checkout(ServiceSettings.fromSystemProperties());
+    }
+
+    /**
+     * @return the most recently used idle client with the given settings, or a new one if there is none. It must be
+     *         returned by {@link #checkin(WhitesourceService)} or {@link #invalidate(WhitesourceService)}.
+     */
+    public synchronized WhitesourceService checkout(final ServiceSettings settings)
+    {
+        evictIdle(System.currentTimeMillis());
+
+        WhitesourceService service = null;
+        final LinkedList<IdleClient> clients = idleClients.get(settings);
+        if (clients != null)
+        {
+            service = clients.removeFirst().service;
+            if (clients.isEmpty())
+            {
+                idleClients.remove(settings);
+            }
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, "Reusing service client for " + settings));
+        }
+        else
+        {
+            service = createService(settings);
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, "Created service client for " + settings));
+        }
+
+        leasedClients.put(service, settings);
+        return service;
+    }
+
+    /**
+     * Returns a client to the pool for reuse. Clients not checked out from this pool are shut down.
+     */
+    public synchronized void checkin(final WhitesourceService service)
+    {
+        final ServiceSettings settings = leasedClients.remove(service);
+        if (settings == null)
+        {
+            service.shutdown();
+            return;
+        }
+
+        LinkedList<IdleClient> clients = idleClients.get(settings);
+        if (clients == null)
+        {
+            clients = new LinkedList<IdleClient>();
+            idleClients.put(settings, clients);
+        }
+        clients.addFirst(new IdleClient(service, System.currentTimeMillis()));
+        startEvictor();
+    }
+
+    /**
+     * Shuts down a checked out client instead of returning it, e.g. after a communication failure left its connections
+     * in an unknown state.
+     */
+    public synchronized void invalidate(final WhitesourceService service)
+    {
+        leasedClients.remove(service);
+        service.shutdown();
+    }
+
+    /**
+     * Shuts down the clients idle since before the idle timeout.
+     */
+    public synchronized void evictIdle(final long now)
+    {
+        int evicted = 0;
+        final Iterator<LinkedList<IdleClient>> lists = idleClients.values().iterator();
+        while (lists.hasNext())
+        {
+            final LinkedList<IdleClient> clients = lists.next();
+            // most recently used first, so the expired clients are at the end
+            while (!clients.isEmpty() && now - clients.getLast().idleSince >= idleTimeout)
+            {
+                clients.removeLast().service.shutdown();
+                evicted++;
+            }
+            if (clients.isEmpty())
+            {
+                lists.remove();
+            }
+        }
+
+        if (evicted > 0)
+        {
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, "Shut down " + evicted + " idle service clients"));
+        }
+    }
+
+    /**
+     * Shuts down all idle clients; checked out clients are shut down when returned.
+     */
+    public synchronized void shutdown()
+    {
+        evictIdle(Long.MAX_VALUE);
+        leasedClients.clear();
+        if (evictor != null)
+        {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+    }
+
+    public synchronized int getIdleCount()
+    {
+        int count = 0;
+        for (LinkedList<IdleClient> clients : idleClients.values())
+        {
+            count += clients.size();
+        }
+
+        return count;
+    }
+
+    public synchronized int getLeasedCount()
+    {
+        return leasedClients.size();
+    }
+
+    protected WhitesourceService createService(final ServiceSettings settings)
+    {
+        return WssUtils.createServiceClient(settings);
+    }
+
+    private void startEvictor()
+    {
+        if (evictor != null)
+        {
+            return;
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "whitesource-client-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final long period = Math.max(idleTimeout / 2, 1000L);
+        evictor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                evictIdle(System.currentTimeMillis());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class IdleClient
+    {
+        private final WhitesourceService service;
+        private final long idleSince;
+
+        private IdleClient(final WhitesourceService service, final long idleSince)
+        {
+            this.service = service;
+            this.idleSince = idleSince;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import org.apache.commons.lang.ObjectUtils;
+
+/**
+ * Service URL and proxy settings of a White Source service client. Clients created for equal settings are
+ * interchangeable.
+ */
+public final class ServiceSettings
+{
+    private final String serviceUrl;
+    private final String proxyHost;
+    private final int proxyPort;
+    private final String proxyUser;
+    private final String proxyPassword;
+    private final boolean compressRequests;
+
+    /**
+     * @param proxyHost
+     *            - proxy URL without port, e.g. 'http://proxy.example.com', or null to connect directly.
+     */
+    public ServiceSettings(final String serviceUrl, final String proxyHost, final int proxyPort,
+            final String proxyUser, final String proxyPassword)
+    {
+        this(serviceUrl, proxyHost, proxyPort, proxyUser, proxyPassword, false);
+    }
+
+    /**
+     * @param compressRequests
+     *            - whether to gzip request bodies, see {@link CompressingServiceClient}.
+     */
+    public ServiceSettings(final String serviceUrl, final String proxyHost, final int proxyPort,
+            final String proxyUser, final String proxyPassword, final boolean compressRequests)
+    {
+        this.serviceUrl = serviceUrl;
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+        this.proxyUser = proxyUser;
+        this.proxyPassword = proxyPassword;
+        this.compressRequests = compressRequests;
+    }
+
+    /**
+     * The service URL defaults to {@link Constants#DEFAULT_SERVICE_URL} and can be overridden with the
+     * {@link Constants#SERVICE_URL_KEYWORD} system property, e.g. to test against a local server.
+     *
+     * Reuses the hosting application's proxy settings, if any (see https://confluence.atlassian.com/x/nAFgDQ for the
+     * rationale).
+     */
+    public static ServiceSettings fromSystemProperties()
+    {
+        final String serviceUrl = System.getProperty(Constants.SERVICE_URL_KEYWORD, Constants.DEFAULT_SERVICE_URL);
+        final String httpProxyHost = System.getProperty("http.proxyHost");
+        if (httpProxyHost != null)
+        {
+            final int proxyPort = Integer.parseInt(System.getProperty("http.proxyPort", "80"));
+            return new ServiceSettings(serviceUrl, "http://" + httpProxyHost, proxyPort,
+                    System.getProperty("http.proxyUser"), System.getProperty("http.proxyPassword"));
+        }
+
+        final String httpsProxyHost = System.getProperty("https.proxyHost");
+        if (httpsProxyHost != null)
+        {
+            final int proxyPort = Integer.parseInt(System.getProperty("https.proxyPort", "443"));
+            return new ServiceSettings(serviceUrl, "https://" + httpsProxyHost, proxyPort,
+                    System.getProperty("http.proxyUser"), System.getProperty("http.proxyPassword"));
+        }
+
+        return new ServiceSettings(serviceUrl, null, 0, null, null);
+    }
+
+    /**
+     * @return a copy of these settings with the given request compression.
+     */
+    public ServiceSettings withCompressRequests(final boolean compress)
+    {
+        return new ServiceSettings(serviceUrl, proxyHost, proxyPort, proxyUser, proxyPassword, compress);
+    }
+
+    public String getServiceUrl()
+    {
+        return serviceUrl;
+    }
+
+    public String getProxyHost()
+    {
+        return proxyHost;
+    }
+
+    public int getProxyPort()
+    {
+        return proxyPort;
+    }
+
+    public String getProxyUser()
+    {
+        return proxyUser;
+    }
+
+    public String getProxyPassword()
+    {
+        return proxyPassword;
+    }
+
+    public boolean isCompressRequests()
+    {
+        return compressRequests;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof ServiceSettings))
+        {
+            return false;
+        }
+
+        final ServiceSettings other = (ServiceSettings) obj;
+        return ObjectUtils.equals(serviceUrl, other.serviceUrl) && ObjectUtils.equals(proxyHost, other.proxyHost)
+                && proxyPort == other.proxyPort && ObjectUtils.equals(proxyUser, other.proxyUser)
+                && ObjectUtils.equals(proxyPassword, other.proxyPassword) && compressRequests == other.compressRequests;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = ObjectUtils.hashCode(serviceUrl);
+        result = 31 * result + ObjectUtils.hashCode(proxyHost);
+        result = 31 * result + proxyPort;
+        result = 31 * result + ObjectUtils.hashCode(proxyUser);
+        result = 31 * result + ObjectUtils.hashCode(proxyPassword);
+        return 31 * result + (compressRequests ? 1 : 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        // no credentials, since this ends up in logs
+        final String target = proxyHost == null ? serviceUrl : serviceUrl + " via " + proxyHost + ":" + proxyPort;
+        return compressRequests ? target + " (compressed)" : target;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads checksums from the '.sha1' files Maven stores next to the artifacts in a repository.
+ *
+ * A sidecar is ignored if it is malformed or noticeably older than its artifact, as happens when a downloaded
+ * artifact is later overwritten by a local build. If a verifier is given, each checksum read is compared with the one
+ * calculated by the verifier, which wins on a mismatch.
+ */
+public class SidecarChecksumSource implements ChecksumSource
+{
+    public static final String SIDECAR_EXTENSION = ".sha1";
+
+    private static final String LOG_COMPONENT = "SidecarChecksumSource";
+    private static final int SHA1_HEX_LENGTH = 40;
+    private static final String OPENSSL_PREFIX = "SHA1(";
+    // the sidecar is usually written right after its artifact, but not necessarily in that order
+    private static final long MODIFICATION_TOLERANCE = 2000L;
+    // sidecars are tiny, anything bigger is not a checksum file
+    private static final long MAX_SIDECAR_SIZE = 1024L;
+
+    private final Logger log = LoggerFactory.getLogger(SidecarChecksumSource.class);
+    private final ChecksumSource verifier;
+
+    /**
+     * @param verifier
+     *            - source to verify each checksum read against, null to trust the sidecars.
+     */
+    public SidecarChecksumSource(final ChecksumSource verifier)
+    {
+        this.verifier = verifier;
+    }
+
+    @Override
+    public String getSha1(final File file) throws IOException
+    {
+        final File sidecar = new File(file.getPath() + SIDECAR_EXTENSION);
+        if (!sidecar.isFile() || sidecar.length() > MAX_SIDECAR_SIZE
+                || sidecar.lastModified() + MODIFICATION_TOLERANCE < file.lastModified())
+        {
+            return null;
+        }
+
+        final String sha1 = parseSidecar(FileUtils.readFileToString(sidecar, "US-ASCII"));
+        if (sha1 == null)
+        {
+            log.debug(WssUtils.logMsg(LOG_COMPONENT, "Ignoring malformed checksum file " + sidecar));
+            return null;
+        }
+
+        if (verifier != null)
+        {
+            final String calculated = verifier.getSha1(file);
+            if (calculated != null && !calculated.equals(sha1))
+            {
+                log.warn(WssUtils.logMsg(LOG_COMPONENT, "Checksum file " + sidecar
+                        + " doesn't match its artifact, using the calculated checksum"));
+                return calculated;
+            }
+        }
+
+        return sha1;
+    }
+
+    /**
+     * Accepts the plain checksum as well as the 'checksum file name' and 'SHA1(file name)= checksum' formats written
+     * by various repository managers.
+     *
+     * @return the lower case checksum, or null if the content isn't a well-formed SHA-1.
+     */
+    public static String parseSidecar(final String content)
+    {
+        String sha1 = content.trim();
+        if (sha1.toUpperCase(Locale.ENGLISH).startsWith(OPENSSL_PREFIX))
+        {
+            sha1 = sha1.substring(sha1.lastIndexOf('=') + 1).trim();
+        }
+        final String[] tokens = sha1.split("\\s+", 2);
+        sha1 = tokens[0].toLowerCase(Locale.ENGLISH);
+
+        if (sha1.length() != SHA1_HEX_LENGTH)
+        {
+            return null;
+        }
+        for (int i = 0; i < sha1.length(); i++)
+        {
+            if (Character.digit(sha1.charAt(i), 16) < 0)
+            {
+                return null;
+            }
+        }
+
+        return sha1;
+    }
+}
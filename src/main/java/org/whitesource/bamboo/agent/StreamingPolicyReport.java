@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2012 White Source Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.agent;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.whitesource.agent.api.dispatch.CheckPoliciesResult;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.RequestPolicyInfo;
+import org.whitesource.agent.api.model.ResourceInfo;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Lightweight policy check report, written as HTML and JSON straight from the result tree into a zip archive.
+ *
+ * Unlike the Velocity based report of the agent API, no template context or rendered copy of the tree is held in
+ * memory, which matters for results with many thousands of resources.
+ */
+public class StreamingPolicyReport
+{
+    public static final String ARCHIVE_NAME = "whitesource-policy-check.zip";
+    public static final String HTML_ENTRY = "index.html";
+    public static final String JSON_ENTRY = "policy-check.json";
+
+    private static final String ENCODING = "UTF-8";
+    private static final Gson JSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final CheckPoliciesResult result;
+    private final String buildName;
+    private final String buildNumber;
+
+    public StreamingPolicyReport(final CheckPoliciesResult result, final String buildName, final String buildNumber)
+    {
+        this.result = result;
+        this.buildName = buildName;
+        this.buildNumber = buildNumber;
+    }
+
+    /**
+     * @return the archive containing the HTML and JSON report, created in the given directory.
+     */
+    public File generate(final File outputDir) throws IOException
+    {
+        if (!outputDir.mkdirs() && !outputDir.isDirectory())
+        {
+            throw new IOException("Can't create report directory " + outputDir);
+        }
+
+        final File archive = new File(outputDir, ARCHIVE_NAME);
+        final ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)));
+        try
+        {
+            final Writer writer = new OutputStreamWriter(zip, ENCODING);
+            zip.putNextEntry(new ZipEntry(HTML_ENTRY));
+            writeHtml(writer);
+            writer.flush();
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry(JSON_ENTRY));
+            writeJson(writer);
+            writer.flush();
+            zip.closeEntry();
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        return archive;
+    }
+
+    public void writeHtml(final Writer out) throws IOException
+    {
+        out.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"/><title>White Source policy check - ");
+        out.write(escapeHtml(buildName));
+        out.write("</title>\n<style>.rejected{color:#c00;font-weight:bold}</style></head><body>\n<h1>");
+        out.write(escapeHtml(buildName) + " #" + escapeHtml(buildNumber));
+        out.write("</h1>\n<p>Organization: " + escapeHtml(result.getOrganization()) + "</p>\n");
+        out.write(result.hasRejections() ? "<p class=\"rejected\">Some dependencies were rejected by policies.</p>\n"
+                : "<p>All dependencies conform with open source policies.</p>\n");
+        writeHtmlProjects(out, "New projects", result.getNewProjects());
+        writeHtmlProjects(out, "Existing projects", result.getExistingProjects());
+        out.write("</body></html>\n");
+    }
+
+    public void writeJson(final Writer out) throws IOException
+    {
+        out.write("{\"buildName\":" + quoteJson(buildName));
+        out.write(",\"buildNumber\":" + quoteJson(buildNumber));
+        out.write(",\"organization\":" + quoteJson(result.getOrganization()));
+        out.write(",\"hasRejections\":" + result.hasRejections());
+        out.write(",\"newProjects\":");
+        writeJsonProjects(out, result.getNewProjects());
+        out.write(",\"existingProjects\":");
+        writeJsonProjects(out, result.getExistingProjects());
+        out.write("}\n");
+    }
+
+    private void writeHtmlProjects(final Writer out, final String title,
+            final Map<String, PolicyCheckResourceNode> projects) throws IOException
+    {
+        if (projects == null || projects.isEmpty())
+        {
+            return;
+        }
+
+        out.write("<h2>" + escapeHtml(title) + "</h2>\n");
+        for (Map.Entry<String, PolicyCheckResourceNode> project : projects.entrySet())
+        {
+            out.write("<h3>" + escapeHtml(project.getKey()) + "</h3>\n");
+            writeHtmlChildren(out, project.getValue());
+        }
+    }
+
+    private void writeHtmlChildren(final Writer out, final PolicyCheckResourceNode node) throws IOException
+    {
+        final Collection<PolicyCheckResourceNode> children = node == null ? null : node.getChildren();
+        if (children == null || children.isEmpty())
+        {
+            return;
+        }
+
+        out.write("<ul>\n");
+        for (PolicyCheckResourceNode child : children)
+        {
+            final RequestPolicyInfo policy = child.getPolicy();
+            out.write(child.hasRejections() ? "<li class=\"rejected\">" : "<li>");
+            writeHtmlResource(out, child.getResource());
+            if (policy != null)
+            {
+                out.write(" - " + escapeHtml(policy.getActionType()) + " by " + escapeHtml(policy.getDisplayName()));
+            }
+            writeHtmlChildren(out, child);
+            out.write("</li>\n");
+        }
+        out.write("</ul>\n");
+    }
+
+    private void writeHtmlResource(final Writer out, final ResourceInfo resource) throws IOException
+    {
+        if (resource == null)
+        {
+            return;
+        }
+
+        if (resource.getLink() != null && isWebLink(resource.getLink()))
+        {
+            out.write("<a href=\"" + escapeHtml(resource.getLink()) + "\">" + escapeHtml(resource.getDisplayName())
+                    + "</a>");
+        }
+        else
+        {
+            out.write(escapeHtml(resource.getDisplayName()));
+        }
+
+        final Collection<String> licenses = resource.getLicenses();
+        if (licenses != null && !licenses.isEmpty())
+        {
+            boolean first = true;
+            out.write(" (");
+            for (String license : licenses)
+            {
+                out.write(first ? "" : ", ");
+                out.write(escapeHtml(license));
+                first = false;
+            }
+            out.write(")");
+        }
+    }
+
+    private void writeJsonProjects(final Writer out, final Map<String, PolicyCheckResourceNode> projects)
+            throws IOException
+    {
+        out.write("{");
+        if (projects != null)
+        {
+            boolean first = true;
+            for (Map.Entry<String, PolicyCheckResourceNode> project : projects.entrySet())
+            {
+                out.write(first ? "" : ",");
+                out.write(quoteJson(project.getKey()) + ":");
+                writeJsonNode(out, project.getValue());
+                first = false;
+            }
+        }
+        out.write("}");
+    }
+
+    private void writeJsonNode(final Writer out, final PolicyCheckResourceNode node) throws IOException
+    {
+        if (node == null)
+        {
+            out.write("null");
+            return;
+        }
+
+        out.write("{\"rejected\":" + node.hasRejections());
+        final ResourceInfo resource = node.getResource();
+        if (resource != null)
+        {
+            out.write(",\"resource\":" + quoteJson(resource.getDisplayName()));
+            out.write(",\"link\":" + quoteJson(resource.getLink()));
+            out.write(",\"licenses\":[");
+            if (resource.getLicenses() != null)
+            {
+                boolean first = true;
+                for (String license : resource.getLicenses())
+                {
+                    out.write((first ? "" : ",") + quoteJson(license));
+                    first = false;
+                }
+            }
+            out.write("]");
+        }
+        final RequestPolicyInfo policy = node.getPolicy();
+        if (policy != null)
+        {
+            out.write(",\"policy\":{\"name\":" + quoteJson(policy.getDisplayName()) + ",\"action\":"
+                    + quoteJson(policy.getActionType()) + "}");
+        }
+
+        out.write(",\"children\":[");
+        if (node.getChildren() != null)
+        {
+            boolean first = true;
+            for (PolicyCheckResourceNode child : node.getChildren())
+            {
+                out.write(first ? "" : ",");
+                writeJsonNode(out, child);
+                first = false;
+            }
+        }
+        out.write("]}");
+    }
+
+    private static String escapeHtml(final String value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+
+        // HTML 4 has no entity for the apostrophe, which ends single quoted attribute values
+        return StringEscapeUtils.escapeHtml(value).replace("'", "&#39;");
+    }
+
+    private static String quoteJson(final String value)
+    {
+        return JSON.toJson(value);
+    }
+
+    /**
+     * @return true if the link can safely be followed from the report, unlike e.g. <code>javascript:</code> URLs.
+     */
+    private static boolean isWebLink(final String link)
+    {
+        final String lowerCaseLink = link.trim().toLowerCase(Locale.ENGLISH);
+        return lowerCaseLink.startsWith("http://") || lowerCaseLink.startsWith("https://");
+    }
+}
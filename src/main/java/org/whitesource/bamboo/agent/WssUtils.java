@@ -16,6 +16,7 @@
 
 package org.whitesource.bamboo.agent;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -40,35 +41,36 @@ public final class WssUtils
 
     public static WhitesourceService createServiceClient()
     {
-        // @todo: the service URL should likely be configurable (see e.g. the Teamcity agent)!
-        WhitesourceService service = new WhitesourceService(Constants.AGENT_TYPE, Constants.AGENT_VERSION,
-                Constants.DEFAULT_SERVICE_URL);
+        return createServiceClient(ServiceSettings.fromSystemProperties());
+    }
 
-        // Reuse hosting application proxy settings, if any (see https://confluence.atlassian.com/x/nAFgDQ for the
-        // rationale).
-        final String httpProxyHost = System.getProperty("http.proxyHost");
-        if (httpProxyHost != null)
-        {
-            final int proxyPort = Integer.parseInt(System.getProperty("http.proxyPort", "80"));
-            final String proxyUser = System.getProperty("http.proxyUser");
-            final String proxyPassword = System.getProperty("http.proxyPassword");
-            service.getClient().setProxy("http://" + httpProxyHost, proxyPort, proxyUser, proxyPassword);
-        }
-        else
+    public static WhitesourceService createServiceClient(final ServiceSettings settings)
+    {
+        WhitesourceService service = new WhitesourceService(Constants.AGENT_TYPE, Constants.AGENT_VERSION,
+                settings.getServiceUrl());
+        service.getClient().shutdown();
+        service.setClient(settings.isCompressRequests() ? new CompressingServiceClient(settings.getServiceUrl())
+                : new AgentServiceClient(settings.getServiceUrl()));
+        if (settings.getProxyHost() != null)
         {
-            final String httpsProxyHost = System.getProperty("https.proxyHost");
-            if (httpsProxyHost != null)
-            {
-                final int proxyPort = Integer.parseInt(System.getProperty("https.proxyPort", "443"));
-                final String proxyUser = System.getProperty("http.proxyUser");
-                final String proxyPassword = System.getProperty("http.proxyPassword");
-                service.getClient().setProxy("https://" + httpsProxyHost, proxyPort, proxyUser, proxyPassword);
-            }
+            service.getClient().setProxy(settings.getProxyHost(), settings.getProxyPort(), settings.getProxyUser(),
+                    settings.getProxyPassword());
         }
 
         return service;
     }
 
+    /**
+     * @return the directory for data kept between builds, located in the agent's home directory (or the user's home
+     *         directory, if the former is unknown).
+     */
+    public static File getAgentDataDirectory()
+    {
+        final String agentHome = System.getProperty(Constants.AGENT_HOME_KEYWORD, System.getProperty("user.home"));
+
+        return new File(agentHome, Constants.DATA_DIRECTORY);
+    }
+
     public static String logMsg(String component, String msg)
     {
         return "[whitesource]::" + component + ": " + msg;
@@ -18,9 +18,19 @@ package org.whitesource.bamboo.plugins;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
@@ -33,9 +43,18 @@ import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.agent.client.WhitesourceService;
 import org.whitesource.agent.client.WssServiceException;
 import org.whitesource.agent.report.PolicyCheckReport;
+import org.whitesource.bamboo.agent.ArchiveScanner;
 import org.whitesource.bamboo.agent.BaseOssInfoExtractor;
+import org.whitesource.bamboo.agent.ChecksumCache;
+import org.whitesource.bamboo.agent.CompactInventory;
 import org.whitesource.bamboo.agent.GenericOssInfoExtractor;
+import org.whitesource.bamboo.agent.InventoryStateStore;
+import org.whitesource.bamboo.agent.MavenModelCache;
 import org.whitesource.bamboo.agent.MavenOssInfoExtractor;
+import org.whitesource.bamboo.agent.ProjectInfoListener;
+import org.whitesource.bamboo.agent.ScanManifest;
+import org.whitesource.bamboo.agent.ServiceSettings;
+import org.whitesource.bamboo.agent.StreamingPolicyReport;
 import org.whitesource.bamboo.agent.WssUtils;
 
 import com.atlassian.bamboo.build.logger.BuildLogger;
@@ -54,6 +73,9 @@ public class AgentTask extends CustomVariableContextImpl implements TaskType
 {
     private static final String LOG_COMPONENT = "AgentTask";
     private static final String CONTACT_SUPPORT = "Encountered internal plugin error - please contact support!";
+    private static final int REPORT_THREADS = 2;
+    private static final long REPORT_THREAD_KEEP_ALIVE = 60L;
+    private static final ExecutorService REPORT_EXECUTOR = createReportExecutor();
 
     protected final Logger log = LoggerFactory.getLogger(BaseOssInfoExtractor.class);
 
@@ -67,73 +89,160 @@ public class AgentTask extends CustomVariableContextImpl implements TaskType
 
         validateVariableSubstitution(buildLogger, taskResultBuilder, configurationMap);
 
+        InventoryStateStore inventoryState = null;
+        if (configurationMap.getAsBoolean(AgentTaskConfigurator.SKIP_UNCHANGED))
+        {
+            inventoryState = InventoryStateStore.open(taskContext.getBuildContext().getPlanResultKey().getPlanKey()
+                    .getKey(), configurationMap.get(AgentTaskConfigurator.API_KEY));
+        }
+
+        if (configurationMap.getAsBoolean(AgentTaskConfigurator.SPOOL_ON_FAILURE)
+                || configurationMap.getAsBoolean(AgentTaskConfigurator.ASYNC_UPDATE))
+        {
+            // e.g. left over from before an agent restart
+            resumeSpoolForwarding(configurationMap);
+        }
+
+        if (configurationMap.getAsBoolean(AgentTaskConfigurator.PIPELINED_UPDATE))
+        {
+            if (configurationMap.getAsBoolean(AgentTaskConfigurator.ASYNC_UPDATE))
+            {
+                buildLogger.addBuildLogEntry("Updating asynchronously, hence spooling projects after collecting.");
+            }
+            else if (!configurationMap.getAsBoolean(AgentTaskConfigurator.CHECK_POLICIES))
+            {
+                collectAndUpdateOssInventory(buildLogger, taskResultBuilder, configurationMap, taskContext,
+                        inventoryState);
+                return taskResultBuilder.build();
+            }
+            else
+            {
+                buildLogger.addBuildLogEntry("Policies are checked, hence updating White Source after collecting.");
+            }
+        }
+
         Collection<AgentProjectInfo> projectInfos = collectOssUsageInformation(buildLogger, configurationMap,
                 taskContext.getBuildContext().getProjectName(), taskContext.getRootDirectory(), taskContext,
-                taskResultBuilder);
+                taskResultBuilder, null);
 
-        updateOssInventory(buildLogger, taskResultBuilder, configurationMap, taskContext.getBuildContext(),
-                taskContext.getRootDirectory(), projectInfos);
+        try
+        {
+            updateOssInventory(buildLogger, taskResultBuilder, configurationMap, taskContext.getBuildContext(),
+                    taskContext.getRootDirectory(), projectInfos, inventoryState);
+        }
+        finally
+        {
+            releaseInventories(projectInfos);
+        }
 
         return taskResultBuilder.build();
     }
 
     private void updateOssInventory(final BuildLogger buildLogger, final TaskResultBuilder taskResultBuilder,
             final ConfigurationMap configurationMap, final BuildContext buildContext, final File buildDirectory,
-            Collection<AgentProjectInfo> projectInfos)
+            Collection<AgentProjectInfo> projectInfos, final InventoryStateStore inventoryState)
     {
         if (CollectionUtils.isEmpty(projectInfos))
         {
             buildLogger.addBuildLogEntry("No open source information found.");
+            return;
         }
-        else
+
+        if (inventoryState != null)
         {
-            WhitesourceService service = WssUtils.createServiceClient();
-            try
+            Collection<AgentProjectInfo> changedProjectInfos = new ArrayList<AgentProjectInfo>();
+            for (AgentProjectInfo projectInfo : projectInfos)
             {
-                final String apiKey = configurationMap.get(AgentTaskConfigurator.API_KEY);
-                final Boolean checkPolicies = configurationMap.getAsBoolean(AgentTaskConfigurator.CHECK_POLICIES);
-
-                if (checkPolicies)
-                {
-                    buildLogger.addBuildLogEntry("Checking policies ...");
-                    CheckPoliciesResult result = service.checkPolicies(apiKey, projectInfos);
-                    reportCheckPoliciesResult(result, buildContext, buildDirectory, buildLogger);
-                    if (result.hasRejections())
-                    {
-                        buildLogger.addErrorLogEntry("... open source rejected by organization policies.");
-                        taskResultBuilder.failedWithError();
-                    }
-                    else
-                    {
-                        buildLogger.addBuildLogEntry("... all dependencies conform with open source policies.");
-                        final UpdateInventoryResult updateResult = service.update(apiKey, projectInfos);
-                        logUpdateResult(updateResult, buildLogger);
-                        buildLogger.addBuildLogEntry("Successfully updated White Source.");
-                    }
-                }
-                else
+                if (inventoryState.isChanged(projectInfo))
                 {
-                    buildLogger.addBuildLogEntry("Ignoring policies ...");
-                    final UpdateInventoryResult updateResult = service.update(apiKey, projectInfos);
-                    logUpdateResult(updateResult, buildLogger);
-                    buildLogger.addBuildLogEntry("Successfully updated White Source.");
+                    changedProjectInfos.add(projectInfo);
                 }
             }
-            catch (WssServiceException e)
+            buildLogger.addBuildLogEntry("Skipping " + (projectInfos.size() - changedProjectInfos.size())
+                    + " unchanged projects, sending " + changedProjectInfos.size() + " changed projects.");
+            if (changedProjectInfos.isEmpty())
             {
-                buildLogger.addErrorLogEntry("Communication with White Source failed.", e);
-                taskResultBuilder.failedWithError();
+                return;
             }
-            catch (IOException e)
+            projectInfos = changedProjectInfos;
+        }
+
+        final ResilientInvoker invoker = createServiceInvoker(buildLogger, configurationMap);
+        try
+        {
+            final String apiKey = configurationMap.get(AgentTaskConfigurator.API_KEY);
+            final Boolean checkPolicies = configurationMap.getAsBoolean(AgentTaskConfigurator.CHECK_POLICIES);
+
+            if (checkPolicies)
             {
-                buildLogger.addErrorLogEntry("Generating policy check report failed.", e);
-                taskResultBuilder.failedWithError();
+                buildLogger.addBuildLogEntry("Checking policies ...");
+                final Collection<AgentProjectInfo> checkedProjectInfos = projectInfos;
+                CheckPoliciesResult result = invoker.invoke("check policies",
+                        new ResilientInvoker.ServiceCall<CheckPoliciesResult>()
+                        {
+                            @Override
+                            public CheckPoliciesResult call(final WhitesourceService service)
+                                    throws WssServiceException
+                            {
+                                return service.checkPolicies(apiKey, checkedProjectInfos);
+                            }
+                        });
+                // the report is rendered while the inventory is updated, the verdict doesn't depend on it
+                final Future<File> report = generateReportInBackground(result, buildContext, buildDirectory,
+                        configurationMap.getAsBoolean(AgentTaskConfigurator.STREAMING_REPORT));
+                if (result.hasRejections())
+                {
+                    buildLogger.addErrorLogEntry("... open source rejected by organization policies.");
+                    taskResultBuilder.failedWithError();
+                }
+                else
+                {
+                    buildLogger.addBuildLogEntry("... all dependencies conform with open source policies.");
+                    if (updateInventory(invoker, apiKey, projectInfos, configurationMap, buildLogger,
+                            taskResultBuilder))
+                    {
+                        saveInventoryState(inventoryState, projectInfos, buildLogger);
+                    }
+                }
+                defineReportArtifact(awaitReport(report), buildContext);
             }
-            finally
+            else
             {
-                service.shutdown();
+                buildLogger.addBuildLogEntry("Ignoring policies ...");
+                if (updateInventory(invoker, apiKey, projectInfos, configurationMap, buildLogger,
+                        taskResultBuilder))
+                {
+                    saveInventoryState(inventoryState, projectInfos, buildLogger);
+                }
             }
         }
+        catch (WssServiceException e)
+        {
+            buildLogger.addErrorLogEntry("Communication with White Source failed.", e);
+            taskResultBuilder.failedWithError();
+        }
+        catch (IOException e)
+        {
+            buildLogger.addErrorLogEntry("Generating policy check report failed.", e);
+            taskResultBuilder.failedWithError();
+        }
+    }
+
+    private static ServiceSettings getServiceSettings(final ConfigurationMap configurationMap)
+    {
+        return ServiceSettings.fromSystemProperties().withCompressRequests(
+                configurationMap.getAsBoolean(AgentTaskConfigurator.COMPRESS_REQUESTS));
+    }
+
+    private ResilientInvoker createServiceInvoker(final BuildLogger buildLogger,
+            final ConfigurationMap configurationMap)
+    {
+        final int attempts = getPositiveInteger(buildLogger, configurationMap, AgentTaskConfigurator.SERVICE_ATTEMPTS,
+                ResilientInvoker.DEFAULT_MAX_ATTEMPTS, "number of attempts");
+        final int timeout = getInteger(buildLogger, configurationMap, AgentTaskConfigurator.SERVICE_TIMEOUT,
+                (int) (ResilientInvoker.DEFAULT_TIMEOUT / 1000), 0, "service timeout");
+
+        return ResilientInvoker.create(getServiceSettings(configurationMap), buildLogger, attempts, timeout * 1000L);
     }
 
     private void validateVariableSubstitution(final BuildLogger buildLogger, final TaskResultBuilder taskResultBuilder,
@@ -157,53 +266,515 @@ public class AgentTask extends CustomVariableContextImpl implements TaskType
         }
     }
 
+    /**
+     * Updates the inventory while the OSS usage information is collected, see {@link PipelinedInventoryUploader}.
+     */
+    private void collectAndUpdateOssInventory(final BuildLogger buildLogger,
+            final TaskResultBuilder taskResultBuilder, final ConfigurationMap configurationMap,
+            final TaskContext taskContext, final InventoryStateStore inventoryState)
+    {
+        buildLogger.addBuildLogEntry("Ignoring policies ...");
+        buildLogger.addBuildLogEntry("Updating White Source while collecting OSS usage information ...");
+
+        int batchSize = getUpdateBatchSize(buildLogger, configurationMap);
+        if (batchSize == 0)
+        {
+            batchSize = Integer.parseInt(AgentTaskConfigurator.DEFAULT_UPDATE_BATCH_SIZE);
+        }
+
+        BatchedInventoryUpdater updater = new BatchedInventoryUpdater(createServiceInvoker(buildLogger,
+                configurationMap), SpoolForwarder.getShared(), buildLogger, batchSize);
+        final PipelinedInventoryUploader uploader = new PipelinedInventoryUploader(updater, buildLogger,
+                configurationMap.get(AgentTaskConfigurator.API_KEY), batchSize);
+        final List<AgentProjectInfo> changedProjectInfos = new ArrayList<AgentProjectInfo>();
+        ProjectInfoListener listener = uploader;
+        if (inventoryState != null)
+        {
+            listener = new ProjectInfoListener()
+            {
+                @Override
+                public void projectInfoExtracted(final AgentProjectInfo projectInfo)
+                {
+                    if (inventoryState.isChanged(projectInfo))
+                    {
+                        changedProjectInfos.add(projectInfo);
+                        uploader.projectInfoExtracted(projectInfo);
+                    }
+                }
+            };
+        }
+        uploader.start();
+
+        Collection<AgentProjectInfo> projectInfos = null;
+        try
+        {
+            projectInfos = collectOssUsageInformation(buildLogger, configurationMap, taskContext.getBuildContext()
+                    .getProjectName(), taskContext.getRootDirectory(), taskContext, taskResultBuilder, listener);
+        }
+        finally
+        {
+            try
+            {
+                if (projectInfos != null)
+                {
+                    uploader.finish();
+                }
+                else
+                {
+                    uploader.cancel();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                buildLogger.addErrorLogEntry("Interrupted while updating White Source.");
+                taskResultBuilder.failedWithError();
+            }
+        }
+
+        if (projectInfos == null)
+        {
+            return;
+        }
+
+        try
+        {
+            if (inventoryState != null)
+            {
+                buildLogger.addBuildLogEntry("Skipped " + (projectInfos.size() - changedProjectInfos.size())
+                        + " unchanged projects, sent " + changedProjectInfos.size() + " changed projects.");
+            }
+
+            if (projectInfos.isEmpty())
+            {
+                buildLogger.addBuildLogEntry("No open source information found.");
+            }
+            else if (uploader.getProjects() > 0)
+            {
+                reportUpdateResults(uploader.getResults(), spoolFailedBatches(configurationMap.get(
+                        AgentTaskConfigurator.API_KEY), uploader.getFailedProjects(), configurationMap, buildLogger),
+                        buildLogger, taskResultBuilder);
+                if (uploader.getFailedBatches() == 0)
+                {
+                    saveInventoryState(inventoryState, changedProjectInfos, buildLogger);
+                }
+            }
+        }
+        finally
+        {
+            releaseInventories(projectInfos);
+        }
+    }
+
+    /**
+     * Deletes the temporary files of compact inventories, once the projects have been sent or spooled.
+     */
+    private static void releaseInventories(final Collection<AgentProjectInfo> projectInfos)
+    {
+        if (projectInfos == null)
+        {
+            return;
+        }
+
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            if (projectInfo.getDependencies() instanceof CompactInventory)
+            {
+                ((CompactInventory) projectInfo.getDependencies()).close();
+            }
+        }
+    }
+
     private Collection<AgentProjectInfo> collectOssUsageInformation(final BuildLogger buildLogger,
             final ConfigurationMap configurationMap, final String projectName, final java.io.File rootDirectory,
-            TaskContext taskContext, TaskResultBuilder taskResultBuilder)
+            TaskContext taskContext, TaskResultBuilder taskResultBuilder, ProjectInfoListener projectInfoListener)
     {
         final String projectType = configurationMap.get(AgentTaskConfigurator.PROJECT_TYPE);
 
-        Collection<AgentProjectInfo> projectInfos = null;
+        BaseOssInfoExtractor extractor = null;
+        MavenModelCache modelCache = null;
+        ScanManifest scanManifest = null;
         if (AgentTaskConfigurator.GENERIC_TYPE.equals(projectType))
         {
             buildLogger.addBuildLogEntry("Collecting OSS usage information (Freestyle)");
 
             // REVIEW: the naming concerning 'includes' vs. 'includesPattern' is confusing down the call stack!
-            BaseOssInfoExtractor extractor = new GenericOssInfoExtractor(projectName,
+            extractor = new GenericOssInfoExtractor(projectName,
                     configurationMap.get(AgentTaskConfigurator.PROJECT_TOKEN),
                     configurationMap.get(AgentTaskConfigurator.FILES_INCLUDE_PATTERN),
-                    configurationMap.get(AgentTaskConfigurator.FILES_EXCLUDE_PATTERN), rootDirectory);
-            projectInfos = extractor.extract();
+                    configurationMap.get(AgentTaskConfigurator.FILES_EXCLUDE_PATTERN), rootDirectory,
+                    getHashingThreads(buildLogger, configurationMap));
+            if (configurationMap.getAsBoolean(AgentTaskConfigurator.INCREMENTAL_SCAN))
+            {
+                scanManifest = ScanManifest.open(rootDirectory);
+                ((GenericOssInfoExtractor) extractor).setScanManifest(scanManifest);
+            }
+            if (configurationMap.getAsBoolean(AgentTaskConfigurator.SCAN_ARCHIVES))
+            {
+                ((GenericOssInfoExtractor) extractor).setArchiveScanner(new ArchiveScanner(
+                        ArchiveScanner.DEFAULT_MAX_DEPTH));
+            }
+            ((GenericOssInfoExtractor) extractor).setMergeDuplicates(configurationMap
+                    .getAsBoolean(AgentTaskConfigurator.MERGE_DUPLICATES));
+            if (configurationMap.getAsBoolean(AgentTaskConfigurator.COMPACT_INVENTORY))
+            {
+                final File spillDirectory = new File(WssUtils.getAgentDataDirectory(),
+                        CompactInventory.SPILL_DIRECTORY);
+                CompactInventory.deleteStaleSpillFiles(spillDirectory, CompactInventory.STALE_SPILL_FILE_AGE);
+                ((GenericOssInfoExtractor) extractor).setCompactInventory(spillDirectory,
+                        CompactInventory.DEFAULT_SPILL_THRESHOLD);
+            }
         }
         else if (AgentTaskConfigurator.MAVEN_TYPE.equals(projectType))
         {
             buildLogger.addBuildLogEntry("Collecting OSS usage information (Maven)");
 
             // REVIEW: the naming concerning 'includes' vs. 'includesPattern' is confusing down the call stack!
-            BaseOssInfoExtractor extractor = new MavenOssInfoExtractor(
+            extractor = new MavenOssInfoExtractor(
                     configurationMap.get(AgentTaskConfigurator.PROJECT_TOKEN),
                     configurationMap.get(AgentTaskConfigurator.MODULE_TOKENS),
                     configurationMap.get(AgentTaskConfigurator.MODULES_INCLUDE_PATTERN),
                     configurationMap.get(AgentTaskConfigurator.MODULES_EXCLUDE_PATTERN),
-                    configurationMap.getAsBoolean(AgentTaskConfigurator.IGNORE_POM), taskContext.getWorkingDirectory());
-            projectInfos = extractor.extract();
+                    configurationMap.getAsBoolean(AgentTaskConfigurator.IGNORE_POM), taskContext.getWorkingDirectory(),
+                    configurationMap.getAsBoolean(AgentTaskConfigurator.PARALLEL_MODULES) ? getHashingThreads(
+                            buildLogger, configurationMap) : 1);
+            if (configurationMap.getAsBoolean(AgentTaskConfigurator.CACHE_MODELS))
+            {
+                modelCache = MavenModelCache.openDefault();
+                ((MavenOssInfoExtractor) extractor).setModelCache(modelCache);
+            }
+            ((MavenOssInfoExtractor) extractor).setChecksumSidecars(
+                    configurationMap.getAsBoolean(AgentTaskConfigurator.USE_SHA1_FILES),
+                    configurationMap.getAsBoolean(AgentTaskConfigurator.VERIFY_SHA1_FILES));
         }
         else
         {
             buildLogger.addErrorLogEntry(CONTACT_SUPPORT);
             taskResultBuilder.failedWithError();
+            return null;
+        }
+
+        ChecksumCache checksumCache = null;
+        if (configurationMap.getAsBoolean(AgentTaskConfigurator.CACHE_CHECKSUMS))
+        {
+            checksumCache = ChecksumCache.openDefault();
+            extractor.setChecksumCache(checksumCache);
+        }
+
+        extractor.setProjectInfoListener(projectInfoListener);
+        Collection<AgentProjectInfo> projectInfos = extractor.extract();
+
+        if (checksumCache != null)
+        {
+            buildLogger.addBuildLogEntry("Checksum cache: " + checksumCache);
+            try
+            {
+                checksumCache.save();
+            }
+            catch (IOException e)
+            {
+                buildLogger.addBuildLogEntry("Saving checksum cache " + checksumCache.getCacheFile() + " failed: "
+                        + e.getMessage());
+            }
+        }
+
+        if (scanManifest != null)
+        {
+            buildLogger.addBuildLogEntry("Scan manifest: " + scanManifest);
+            try
+            {
+                scanManifest.save();
+            }
+            catch (IOException e)
+            {
+                buildLogger.addBuildLogEntry("Saving scan manifest " + scanManifest.getManifestFile() + " failed: "
+                        + e.getMessage());
+            }
+        }
+
+        if (modelCache != null)
+        {
+            buildLogger.addBuildLogEntry("Maven model cache: " + modelCache);
+            try
+            {
+                modelCache.save();
+            }
+            catch (IOException e)
+            {
+                buildLogger.addBuildLogEntry("Saving Maven model cache " + modelCache.getCacheFile() + " failed: "
+                        + e.getMessage());
+            }
         }
 
         return projectInfos;
     }
 
+    private int getHashingThreads(final BuildLogger buildLogger, final ConfigurationMap configurationMap)
+    {
+        final int defaultThreads = Runtime.getRuntime().availableProcessors();
+        final String value = configurationMap.get(AgentTaskConfigurator.HASHING_THREADS);
+        if (StringUtils.isBlank(value))
+        {
+            return defaultThreads;
+        }
+
+        try
+        {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        }
+        catch (NumberFormatException e)
+        {
+            buildLogger.addBuildLogEntry("Invalid number of worker threads '" + value + "', using " + defaultThreads
+                    + " instead.");
+            return defaultThreads;
+        }
+    }
+
+    private int getPositiveInteger(final BuildLogger buildLogger, final ConfigurationMap configurationMap,
+            final String key, final int defaultValue, final String description)
+    {
+        return getInteger(buildLogger, configurationMap, key, defaultValue, 1, description);
+    }
+
+    private int getInteger(final BuildLogger buildLogger, final ConfigurationMap configurationMap, final String key,
+            final int defaultValue, final int minimum, final String description)
+    {
+        final String value = configurationMap.get(key);
+        if (StringUtils.isBlank(value))
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Math.max(minimum, Integer.parseInt(value.trim()));
+        }
+        catch (NumberFormatException e)
+        {
+            buildLogger.addBuildLogEntry("Invalid " + description + " '" + value + "', using " + defaultValue
+                    + " instead.");
+            return defaultValue;
+        }
+    }
+
+    private boolean updateInventory(final ResilientInvoker invoker, final String apiKey,
+            final Collection<AgentProjectInfo> projectInfos, final ConfigurationMap configurationMap,
+            final BuildLogger buildLogger, final TaskResultBuilder taskResultBuilder)
+    {
+        final int batchSize = getUpdateBatchSize(buildLogger, configurationMap);
+        if (configurationMap.getAsBoolean(AgentTaskConfigurator.ASYNC_UPDATE))
+        {
+            if (spoolBatches(apiKey, BatchedInventoryUpdater.partition(projectInfos, batchSize), configurationMap,
+                    buildLogger) > 0)
+            {
+                taskResultBuilder.failedWithError();
+            }
+            // not known to be updated yet, so the inventory state isn't saved
+            return false;
+        }
+
+        BatchedInventoryUpdater updater = new BatchedInventoryUpdater(invoker, SpoolForwarder.getShared(), buildLogger,
+                batchSize);
+        List<UpdateInventoryResult> results = updater.update(apiKey, projectInfos);
+        reportUpdateResults(results, spoolFailedBatches(apiKey, updater.getFailedProjects(), configurationMap,
+                buildLogger), buildLogger, taskResultBuilder);
+
+        return updater.getFailedBatches() == 0;
+    }
+
+    /**
+     * Spools the batches which couldn't be sent for the {@link SpoolForwarder}, if enabled.
+     * 
+     * @return the number of batches neither sent nor spooled.
+     */
+    private int spoolFailedBatches(final String apiKey, final List<List<AgentProjectInfo>> failedProjects,
+            final ConfigurationMap configurationMap, final BuildLogger buildLogger)
+    {
+        if (failedProjects.isEmpty() || !configurationMap.getAsBoolean(AgentTaskConfigurator.SPOOL_ON_FAILURE))
+        {
+            return failedProjects.size();
+        }
+
+        buildLogger.addBuildLogEntry("Spooling " + failedProjects.size()
+                + " batches of projects which couldn't be sent.");
+        return spoolBatches(apiKey, failedProjects, configurationMap, buildLogger);
+    }
+
+    /**
+     * @return the number of batches which couldn't be spooled.
+     */
+    private int spoolBatches(final String apiKey, final List<List<AgentProjectInfo>> batches,
+            final ConfigurationMap configurationMap, final BuildLogger buildLogger)
+    {
+        final SpoolForwarder forwarder = SpoolForwarder.getShared();
+        int failedBatches = 0;
+        for (List<AgentProjectInfo> batch : batches)
+        {
+            try
+            {
+                forwarder.getSpool().spool(apiKey, batch);
+            }
+            catch (IOException e)
+            {
+                buildLogger.addErrorLogEntry("Spooling " + batch.size() + " projects failed.", e);
+                failedBatches++;
+            }
+        }
+
+        buildLogger.addBuildLogEntry("Spooled " + (batches.size() - failedBatches) + " batches of projects to "
+                + forwarder.getSpool().getDirectory() + ", they are sent to White Source in the background.");
+        forwarder.wakeUp(getServiceSettings(configurationMap));
+
+        return failedBatches;
+    }
+
+    private void resumeSpoolForwarding(final ConfigurationMap configurationMap)
+    {
+        final SpoolForwarder forwarder = SpoolForwarder.getShared();
+        if (!forwarder.getSpool().list().isEmpty())
+        {
+            forwarder.wakeUp(getServiceSettings(configurationMap));
+        }
+    }
+
+    private void saveInventoryState(final InventoryStateStore inventoryState,
+            final Collection<AgentProjectInfo> projectInfos, final BuildLogger buildLogger)
+    {
+        if (inventoryState == null)
+        {
+            return;
+        }
+
+        inventoryState.markUpdated(projectInfos);
+        try
+        {
+            inventoryState.save();
+        }
+        catch (IOException e)
+        {
+            buildLogger.addBuildLogEntry("Saving inventory state " + inventoryState.getStateFile() + " failed: "
+                    + e.getMessage());
+        }
+    }
+
+    private void reportUpdateResults(final List<UpdateInventoryResult> results, final int failedBatches,
+            final BuildLogger buildLogger, final TaskResultBuilder taskResultBuilder)
+    {
+        for (UpdateInventoryResult updateResult : results)
+        {
+            logUpdateResult(updateResult, buildLogger);
+        }
+
+        if (failedBatches > 0)
+        {
+            buildLogger.addErrorLogEntry("Updating White Source failed for " + failedBatches
+                    + " batches of projects.");
+            taskResultBuilder.failedWithError();
+        }
+        else
+        {
+            buildLogger.addBuildLogEntry("Successfully updated White Source.");
+        }
+    }
+
+    private int getUpdateBatchSize(final BuildLogger buildLogger, final ConfigurationMap configurationMap)
+    {
+        final String value = configurationMap.get(AgentTaskConfigurator.UPDATE_BATCH_SIZE);
+        if (StringUtils.isBlank(value))
+        {
+            return 0;
+        }
+
+        try
+        {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        }
+        catch (NumberFormatException e)
+        {
+            buildLogger.addBuildLogEntry("Invalid update batch size '" + value + "', updating all projects at once.");
+            return 0;
+        }
+    }
+
     private boolean isSubstitutionValid(final String variable)
     {
         return !variable.contains("${");
     }
 
-    private void reportCheckPoliciesResult(CheckPoliciesResult result, final BuildContext buildContext,
-            final File buildDirectory, BuildLogger buildLogger) throws IOException
+    /**
+     * Starts generating the policy check report on the report executor, see {@link #generateReport}.
+     */
+    private Future<File> generateReportInBackground(final CheckPoliciesResult result,
+            final BuildContext buildContext, final File buildDirectory, final boolean streaming)
+    {
+        return REPORT_EXECUTOR.submit(new Callable<File>()
+        {
+            @Override
+            public File call() throws IOException
+            {
+                final long startTime = System.currentTimeMillis();
+                final File reportArchive = streaming ? new StreamingPolicyReport(result,
+                        buildContext.getProjectName(), buildContext.getBuildResultKey()).generate(buildDirectory)
+                        : generateReport(result, buildContext, buildDirectory);
+                log.info(WssUtils.logMsg(LOG_COMPONENT, "Generated report " + reportArchive + " in "
+                        + (System.currentTimeMillis() - startTime) + " ms"));
+
+                return reportArchive;
+            }
+        });
+    }
+
+    /**
+     * @return the executor rendering the policy check reports of all tasks on this agent, whose daemon threads time
+     *         out when idle.
+     */
+    private static ExecutorService createReportExecutor()
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(REPORT_THREADS, REPORT_THREADS,
+                REPORT_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        final Thread thread = new Thread(runnable, "whitesource-report");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private File awaitReport(final Future<File> report) throws IOException
+    {
+        try
+        {
+            return report.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            report.cancel(true);
+            throw new IOException("Interrupted while generating the report", e);
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    private File generateReport(final CheckPoliciesResult result, final BuildContext buildContext,
+            final File buildDirectory) throws IOException
     {
         PolicyCheckReport report = new PolicyCheckReport(result, buildContext.getProjectName(),
                 buildContext.getBuildResultKey());
@@ -236,6 +807,11 @@ public class AgentTask extends CustomVariableContextImpl implements TaskType
             thread.setContextClassLoader(loader);
         }
 
+        return reportArchive;
+    }
+
+    private void defineReportArtifact(final File reportArchive, final BuildContext buildContext)
+    {
         if (reportArchive != null)
         {
             ArtifactDefinitionContext artifact = new ArtifactDefinitionContextImpl();
@@ -50,10 +50,35 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator
     public static final String FILES_INCLUDE_PATTERN = "filesIncludePattern";
     public static final String FILES_EXCLUDE_PATTERN = "filesExcludePattern";
     public static final String IGNORE_POM = "ignorePOM";
+    // NOTE: also the number of threads processing Maven modules if PARALLEL_MODULES is set, the key is kept as is.
+    public static final String HASHING_THREADS = "hashingThreads";
+    public static final String CACHE_CHECKSUMS = "cacheChecksums";
+    public static final String PARALLEL_MODULES = "parallelModules";
+    public static final String CACHE_MODELS = "cacheModels";
+    public static final String USE_SHA1_FILES = "useSha1Files";
+    public static final String VERIFY_SHA1_FILES = "verifySha1Files";
+    public static final String UPDATE_BATCH_SIZE = "updateBatchSize";
+    public static final String PIPELINED_UPDATE = "pipelinedUpdate";
+    public static final String SKIP_UNCHANGED = "skipUnchanged";
+    public static final String COMPRESS_REQUESTS = "compressRequests";
+    public static final String STREAMING_REPORT = "streamingReport";
+    public static final String SERVICE_ATTEMPTS = "serviceAttempts";
+    public static final String SERVICE_TIMEOUT = "serviceTimeout";
+    public static final String SPOOL_ON_FAILURE = "spoolOnFailure";
+    public static final String ASYNC_UPDATE = "asyncUpdate";
+    public static final String INCREMENTAL_SCAN = "incrementalScan";
+    public static final String SCAN_ARCHIVES = "scanArchives";
+    public static final String MERGE_DUPLICATES = "mergeDuplicates";
+    public static final String COMPACT_INVENTORY = "compactInventory";
     private static final Set<String> FIELD_COLLECTION = ImmutableSet
             .<String> builder()
             .add(API_KEY, CHECK_POLICIES, PROJECT_TYPE, PROJECT_TOKEN, MODULE_TOKENS, MODULES_INCLUDE_PATTERN,
-                    MODULES_EXCLUDE_PATTERN, FILES_INCLUDE_PATTERN, FILES_EXCLUDE_PATTERN, IGNORE_POM).build();
+                    MODULES_EXCLUDE_PATTERN, FILES_INCLUDE_PATTERN, FILES_EXCLUDE_PATTERN, IGNORE_POM,
+                    HASHING_THREADS, CACHE_CHECKSUMS, PARALLEL_MODULES, CACHE_MODELS, USE_SHA1_FILES,
+                    VERIFY_SHA1_FILES, UPDATE_BATCH_SIZE, PIPELINED_UPDATE, SKIP_UNCHANGED,
+                    COMPRESS_REQUESTS, STREAMING_REPORT, SERVICE_ATTEMPTS, SERVICE_TIMEOUT, SPOOL_ON_FAILURE,
+                    ASYNC_UPDATE, INCREMENTAL_SCAN, SCAN_ARCHIVES, MERGE_DUPLICATES,
+                    COMPACT_INVENTORY).build();
     public static final String GENERIC_TYPE = "Freestyle"; // @todo: an enum would be helpful of course ...
     public static final String MAVEN_TYPE = "Maven"; // @todo: an enum would be helpful of course ...
     private static final Map<String, String> TYPE_MAP = ImmutableMap.<String, String> builder()
@@ -64,6 +89,24 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator
     private static final String DEFAULT_FILES_INCLUDES_PATTERN = "lib/*.jar";
     public static final String DEFAULT_IGNORE_POM = OPTION_FALSE;
     public static final String DEFAULT_CHECK_POLICIES = OPTION_FALSE;
+    public static final String DEFAULT_CACHE_CHECKSUMS = OPTION_TRUE;
+    public static final String DEFAULT_PARALLEL_MODULES = OPTION_FALSE;
+    public static final String DEFAULT_CACHE_MODELS = OPTION_FALSE;
+    public static final String DEFAULT_USE_SHA1_FILES = OPTION_TRUE;
+    public static final String DEFAULT_VERIFY_SHA1_FILES = OPTION_FALSE;
+    public static final String DEFAULT_UPDATE_BATCH_SIZE = "5000";
+    public static final String DEFAULT_PIPELINED_UPDATE = OPTION_FALSE;
+    public static final String DEFAULT_SKIP_UNCHANGED = OPTION_FALSE;
+    public static final String DEFAULT_COMPRESS_REQUESTS = OPTION_FALSE;
+    public static final String DEFAULT_STREAMING_REPORT = OPTION_FALSE;
+    public static final String DEFAULT_SERVICE_ATTEMPTS = "3";
+    public static final String DEFAULT_SERVICE_TIMEOUT = "0";
+    public static final String DEFAULT_SPOOL_ON_FAILURE = OPTION_FALSE;
+    public static final String DEFAULT_ASYNC_UPDATE = OPTION_FALSE;
+    public static final String DEFAULT_INCREMENTAL_SCAN = OPTION_FALSE;
+    public static final String DEFAULT_SCAN_ARCHIVES = OPTION_FALSE;
+    public static final String DEFAULT_MERGE_DUPLICATES = OPTION_FALSE;
+    public static final String DEFAULT_COMPACT_INVENTORY = OPTION_FALSE;
     public static final String CTX_PLAN = "plan";
     public static final String CTX_MAVEN_JOB = "mavenJob";
     private Job mavenJob;
@@ -95,6 +138,24 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator
         context.put(PROJECT_TYPE, detectProjectType(context));
         context.put(FILES_INCLUDE_PATTERN, DEFAULT_FILES_INCLUDES_PATTERN);
         context.put(IGNORE_POM, DEFAULT_IGNORE_POM);
+        context.put(CACHE_CHECKSUMS, DEFAULT_CACHE_CHECKSUMS);
+        context.put(PARALLEL_MODULES, DEFAULT_PARALLEL_MODULES);
+        context.put(CACHE_MODELS, DEFAULT_CACHE_MODELS);
+        context.put(USE_SHA1_FILES, DEFAULT_USE_SHA1_FILES);
+        context.put(VERIFY_SHA1_FILES, DEFAULT_VERIFY_SHA1_FILES);
+        context.put(UPDATE_BATCH_SIZE, DEFAULT_UPDATE_BATCH_SIZE);
+        context.put(PIPELINED_UPDATE, DEFAULT_PIPELINED_UPDATE);
+        context.put(SKIP_UNCHANGED, DEFAULT_SKIP_UNCHANGED);
+        context.put(COMPRESS_REQUESTS, DEFAULT_COMPRESS_REQUESTS);
+        context.put(STREAMING_REPORT, DEFAULT_STREAMING_REPORT);
+        context.put(SERVICE_ATTEMPTS, DEFAULT_SERVICE_ATTEMPTS);
+        context.put(SERVICE_TIMEOUT, DEFAULT_SERVICE_TIMEOUT);
+        context.put(SPOOL_ON_FAILURE, DEFAULT_SPOOL_ON_FAILURE);
+        context.put(ASYNC_UPDATE, DEFAULT_ASYNC_UPDATE);
+        context.put(INCREMENTAL_SCAN, DEFAULT_INCREMENTAL_SCAN);
+        context.put(SCAN_ARCHIVES, DEFAULT_SCAN_ARCHIVES);
+        context.put(MERGE_DUPLICATES, DEFAULT_MERGE_DUPLICATES);
+        context.put(COMPACT_INVENTORY, DEFAULT_COMPACT_INVENTORY);
         context.put("mode", "create");
     }
 
@@ -148,9 +209,56 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator
             errorCollection.addError(FILES_INCLUDE_PATTERN,
                     getI18nBean().getText("org.whitesource.bamboo.plugins.includesPattern.error"));
         }
+        final String hashingThreadsValue = params.getString(HASHING_THREADS);
+        if (StringUtils.isNotEmpty(hashingThreadsValue) && !isPositiveInteger(hashingThreadsValue))
+        {
+            errorCollection.addError(HASHING_THREADS,
+                    getI18nBean().getText("org.whitesource.bamboo.plugins.hashingThreads.error"));
+        }
+        final String updateBatchSizeValue = params.getString(UPDATE_BATCH_SIZE);
+        if (StringUtils.isNotEmpty(updateBatchSizeValue) && !isPositiveInteger(updateBatchSizeValue))
+        {
+            errorCollection.addError(UPDATE_BATCH_SIZE,
+                    getI18nBean().getText("org.whitesource.bamboo.plugins.updateBatchSize.error"));
+        }
+        final String serviceAttemptsValue = params.getString(SERVICE_ATTEMPTS);
+        if (StringUtils.isNotEmpty(serviceAttemptsValue) && !isPositiveInteger(serviceAttemptsValue))
+        {
+            errorCollection.addError(SERVICE_ATTEMPTS,
+                    getI18nBean().getText("org.whitesource.bamboo.plugins.serviceAttempts.error"));
+        }
+        final String serviceTimeoutValue = params.getString(SERVICE_TIMEOUT);
+        if (StringUtils.isNotEmpty(serviceTimeoutValue) && !isInteger(serviceTimeoutValue, 0))
+        {
+            errorCollection.addError(SERVICE_TIMEOUT,
+                    getI18nBean().getText("org.whitesource.bamboo.plugins.serviceTimeout.error"));
+        }
         // @todo: add regular expression based validations for map and pattern input fields!
     }
 
+    private boolean isPositiveInteger(final String value)
+    {
+        return isInteger(value, 1);
+    }
+
+    private boolean isInteger(final String value, final int minimum)
+    {
+        // variable substitutions are resolved on the agent only, see AgentTask.
+        if (value.contains("${"))
+        {
+            return true;
+        }
+
+        try
+        {
+            return Integer.parseInt(value.trim()) >= minimum;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
     private Object detectProjectType(@NotNull final Map<String, Object> context)
     {
         // This function should apply some heuristics to determine the project type at hand (e.g. find a Maven job, or a
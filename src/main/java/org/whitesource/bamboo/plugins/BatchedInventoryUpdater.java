@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2012 WhiteSource Software Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.agent.client.WssServiceException;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+/**
+ * Updates the inventory in batches of projects, so a huge reactor doesn't end up in a single request.
+ * 
+ * Batches are bounded by their total number of dependencies. A project is never split, since each update replaces
+ * the inventory of the projects it contains, hence a single project exceeding the limit is sent on its own. Each batch
+ * is retried on its own via the {@link ResilientInvoker}; a batch failing for good doesn't stop the remaining ones. Older
+ * updates of the same projects still waiting in the spool of the given {@link SpoolForwarder} are dropped before a batch
+ * is sent, so they can't overwrite it later.
+ */
+public class BatchedInventoryUpdater
+{
+    private final ResilientInvoker invoker;
+    private final SpoolForwarder forwarder;
+    private final BuildLogger buildLogger;
+    private final int batchSize;
+    private List<List<AgentProjectInfo>> failedProjects = new ArrayList<List<AgentProjectInfo>>();
+
+    /**
+     * @param batchSize
+     *            - maximum number of dependencies per request, 0 to send all projects at once.
+     */
+    public BatchedInventoryUpdater(final ResilientInvoker invoker, final BuildLogger buildLogger, final int batchSize)
+    {
+        this(invoker, null, buildLogger, batchSize);
+    }
+
+    /**
+     * @param forwarder
+     *            - forwarder of the spool possibly holding older updates of the projects, null if none.
+     * @param batchSize
+     *            - maximum number of dependencies per request, 0 to send all projects at once.
+     */
+    public BatchedInventoryUpdater(final ResilientInvoker invoker, final SpoolForwarder forwarder,
+            final BuildLogger buildLogger, final int batchSize)
+    {
+        this.invoker = invoker;
+        this.forwarder = forwarder;
+        this.buildLogger = buildLogger;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the results of all successfully updated batches, see {@link #getFailedBatches()} for the others.
+     */
+    public List<UpdateInventoryResult> update(final String apiKey, final Collection<AgentProjectInfo> projectInfos)
+    {
+        final List<List<AgentProjectInfo>> batches = partition(projectInfos, batchSize);
+        final List<UpdateInventoryResult> results = new ArrayList<UpdateInventoryResult>();
+        failedProjects = new ArrayList<List<AgentProjectInfo>>();
+
+        int updatedProjects = 0;
+        for (int i = 0; i < batches.size(); i++)
+        {
+            final List<AgentProjectInfo> batch = batches.get(i);
+            final String batchName = "batch " + (i + 1) + "/" + batches.size();
+            final UpdateInventoryResult result = updateBatch(apiKey, batch, batchName);
+            if (result != null)
+            {
+                results.add(result);
+                updatedProjects += batch.size();
+                if (batches.size() > 1)
+                {
+                    buildLogger.addBuildLogEntry("... updated " + batchName + " (" + updatedProjects + " of "
+                            + projectInfos.size() + " projects)");
+                }
+            }
+            else
+            {
+                failedProjects.add(batch);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @return the number of batches which couldn't be updated by the last call to {@link #update}.
+     */
+    public int getFailedBatches()
+    {
+        return failedProjects.size();
+    }
+
+    /**
+     * @return the projects of each batch which couldn't be updated by the last call to {@link #update}.
+     */
+    public List<List<AgentProjectInfo>> getFailedProjects()
+    {
+        return failedProjects;
+    }
+
+    private UpdateInventoryResult updateBatch(final String apiKey, final List<AgentProjectInfo> batch,
+            final String batchName)
+    {
+        supersedeSpooledUpdates(apiKey, batch, batchName);
+        try
+        {
+            return invoker.invoke("update " + batchName, new ResilientInvoker.ServiceCall<UpdateInventoryResult>()
+            {
+                @Override
+                public UpdateInventoryResult call(final WhitesourceService service) throws WssServiceException
+                {
+                    return service.update(apiKey, batch);
+                }
+            });
+        }
+        catch (WssServiceException e)
+        {
+            buildLogger.addErrorLogEntry("Updating " + batchName + " with " + batch.size() + " projects failed.", e);
+            return null;
+        }
+    }
+
+    private void supersedeSpooledUpdates(final String apiKey, final List<AgentProjectInfo> batch,
+            final String batchName)
+    {
+        if (forwarder == null)
+        {
+            return;
+        }
+
+        try
+        {
+            final int dropped = forwarder.supersede(apiKey, batch);
+            if (dropped > 0)
+            {
+                buildLogger.addBuildLogEntry("Dropped " + dropped + " spooled projects superseded by " + batchName
+                        + ".");
+            }
+        }
+        catch (IOException e)
+        {
+            buildLogger.addBuildLogEntry("Dropping spooled projects superseded by " + batchName + " failed: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Splits the projects into batches of at most the given number of dependencies, keeping their order. A project
+     * without dependencies counts as one.
+     * 
+     * @param batchSize
+     *            - maximum number of dependencies per batch, 0 for a single batch.
+     */
+    public static List<List<AgentProjectInfo>> partition(final Collection<AgentProjectInfo> projectInfos,
+            final int batchSize)
+    {
+        final List<List<AgentProjectInfo>> batches = new ArrayList<List<AgentProjectInfo>>();
+        List<AgentProjectInfo> batch = new ArrayList<AgentProjectInfo>();
+        int batchWeight = 0;
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            final int weight = Math.max(1, projectInfo.getDependencies().size());
+            if (batchSize > 0 && !batch.isEmpty() && batchWeight + weight > batchSize)
+            {
+                batches.add(batch);
+                batch = new ArrayList<AgentProjectInfo>();
+                batchWeight = 0;
+            }
+            batch.add(projectInfo);
+            batchWeight += weight;
+        }
+        if (!batch.isEmpty())
+        {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2012 WhiteSource Software Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.bamboo.agent.ProjectInfoListener;
+import org.whitesource.bamboo.agent.WssUtils;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+/**
+ * Updates the inventory on a background thread while the extraction is still running.
+ * 
+ * Extracted projects are handed over through a bounded queue, so a slow upload throttles the extraction rather than
+ * buffering the whole inventory. If the uploader dies, the extraction stops waiting for it and the projects it didn't
+ * send are reported as failed. Projects are sent in batches of the given size via a {@link BatchedInventoryUpdater},
+ * in extraction order. Policies can't be checked this way, since that requires the complete inventory upfront.
+ */
+public class PipelinedInventoryUploader implements ProjectInfoListener
+{
+    public static final int QUEUE_CAPACITY = 64;
+    public static final long HAND_OVER_TIMEOUT_MILLIS = 1000L;
+
+    private static final String LOG_COMPONENT = "PipelinedInventoryUploader";
+    private static final AgentProjectInfo END_OF_STREAM = new AgentProjectInfo();
+
+    private final Logger log = LoggerFactory.getLogger(PipelinedInventoryUploader.class);
+    private final BlockingQueue<AgentProjectInfo> queue = new ArrayBlockingQueue<AgentProjectInfo>(QUEUE_CAPACITY);
+    private final BatchedInventoryUpdater updater;
+    private final BuildLogger buildLogger;
+    private final String apiKey;
+    private final int batchSize;
+    private final List<UpdateInventoryResult> results = new ArrayList<UpdateInventoryResult>();
+    private final Thread thread;
+    private volatile boolean cancelled;
+    private int projects;
+    private int sentProjects;
+    private final List<List<AgentProjectInfo>> failedProjects = new ArrayList<List<AgentProjectInfo>>();
+    // projects the uploader didn't take any more, since it died
+    private final List<AgentProjectInfo> unsentProjects = new ArrayList<AgentProjectInfo>();
+
+    /**
+     * @param batchSize
+     *            - number of dependencies to collect before sending them.
+     */
+    public PipelinedInventoryUploader(final BatchedInventoryUpdater updater, final BuildLogger buildLogger,
+            final String apiKey, final int batchSize)
+    {
+        this.updater = updater;
+        this.buildLogger = buildLogger;
+        this.apiKey = apiKey;
+        this.batchSize = batchSize;
+        this.thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                upload();
+            }
+        }, "whitesource-uploader");
+        this.thread.setDaemon(true);
+    }
+
+    public void start()
+    {
+        thread.start();
+    }
+
+    @Override
+    public void projectInfoExtracted(final AgentProjectInfo projectInfo)
+    {
+        projects++;
+        try
+        {
+            if (!handOver(projectInfo))
+            {
+                unsentProjects.add(projectInfo);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while handing over project to the uploader!", e);
+        }
+    }
+
+    /**
+     * Sends the remaining projects and waits for the uploader to complete.
+     */
+    public void finish() throws InterruptedException
+    {
+        handOver(END_OF_STREAM);
+        thread.join();
+        collectUnsentProjects();
+    }
+
+    /**
+     * Discards all projects not sent yet, e.g. after the extraction failed, and waits for a pending request to
+     * complete.
+     */
+    public void cancel() throws InterruptedException
+    {
+        cancelled = true;
+        queue.clear();
+        handOver(END_OF_STREAM);
+        thread.join();
+    }
+
+    /**
+     * @return the results of all successfully sent batches, valid after {@link #finish()}.
+     */
+    public List<UpdateInventoryResult> getResults()
+    {
+        return results;
+    }
+
+    public int getFailedBatches()
+    {
+        return failedProjects.size();
+    }
+
+    /**
+     * @return the projects of each batch which couldn't be sent, valid after {@link #finish()}.
+     */
+    public List<List<AgentProjectInfo>> getFailedProjects()
+    {
+        return failedProjects;
+    }
+
+    /**
+     * @return the number of projects received from the extraction.
+     */
+    public int getProjects()
+    {
+        return projects;
+    }
+
+    private void upload()
+    {
+        List<AgentProjectInfo> pending = new ArrayList<AgentProjectInfo>();
+        int pendingDependencies = 0;
+        // taken from the queue, but not pending yet
+        AgentProjectInfo projectInfo = null;
+        try
+        {
+            while (true)
+            {
+                projectInfo = queue.take();
+                if (projectInfo == END_OF_STREAM)
+                {
+                    projectInfo = null;
+                    break;
+                }
+
+                final int weight = Math.max(1, projectInfo.getDependencies().size());
+                // same bounds as BatchedInventoryUpdater.partition(), so each batch is sent as a single request
+                if (!pending.isEmpty() && pendingDependencies + weight > batchSize)
+                {
+                    send(pending);
+                    pending = new ArrayList<AgentProjectInfo>();
+                    pendingDependencies = 0;
+                }
+                pending.add(projectInfo);
+                pendingDependencies += weight;
+                projectInfo = null;
+            }
+
+            if (!pending.isEmpty())
+            {
+                send(pending);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Interrupted, " + pending.size() + " projects not sent"));
+            addFailedProjects(pending);
+        }
+        catch (Throwable e)
+        {
+            // the extraction notices the uploader is gone and keeps the remaining projects as failed
+            if (projectInfo != null)
+            {
+                pending.add(projectInfo);
+            }
+            log.error(WssUtils.logMsg(LOG_COMPONENT, "Uploader failed, " + pending.size() + " projects not sent: "
+                    + e));
+            addFailedProjects(pending);
+        }
+    }
+
+    /**
+     * Waits for room in the queue as long as the uploader is alive.
+     * 
+     * @return false if the uploader died, so the project won't be sent.
+     */
+    private boolean handOver(final AgentProjectInfo projectInfo) throws InterruptedException
+    {
+        while (thread.isAlive())
+        {
+            if (queue.offer(projectInfo, HAND_OVER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the projects left behind by a dead uploader to the failed ones, once it ended.
+     */
+    private void collectUnsentProjects()
+    {
+        for (AgentProjectInfo projectInfo : queue)
+        {
+            if (projectInfo != END_OF_STREAM)
+            {
+                unsentProjects.add(projectInfo);
+            }
+        }
+        queue.clear();
+        addFailedProjects(unsentProjects);
+        unsentProjects.clear();
+    }
+
+    private void addFailedProjects(final List<AgentProjectInfo> projectInfos)
+    {
+        if (!projectInfos.isEmpty())
+        {
+            failedProjects.add(new ArrayList<AgentProjectInfo>(projectInfos));
+        }
+    }
+
+    private void send(final List<AgentProjectInfo> batch)
+    {
+        if (cancelled)
+        {
+            return;
+        }
+
+        try
+        {
+            results.addAll(updater.update(apiKey, batch));
+            failedProjects.addAll(updater.getFailedProjects());
+            sentProjects += batch.size();
+            buildLogger.addBuildLogEntry("... sent " + sentProjects + " projects while collecting");
+        }
+        catch (RuntimeException e)
+        {
+            log.error(WssUtils.logMsg(LOG_COMPONENT, "Sending " + batch.size() + " projects failed: " + e));
+            addFailedProjects(batch);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2012 WhiteSource Software Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.plugins;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.bamboo.agent.CircuitBreaker;
+import org.whitesource.bamboo.agent.ServiceClientPool;
+import org.whitesource.bamboo.agent.ServiceSettings;
+import org.whitesource.bamboo.agent.WssUtils;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+/**
+ * Invokes White Source service calls with retries, jittered exponential backoff, a timeout per attempt and the
+ * agent wide {@link CircuitBreaker} of the service URL.
+ * 
+ * Each attempt uses a client checked out from the {@link ServiceClientPool}. A client whose call failed or timed out
+ * is invalidated, which also aborts a request still hanging after its timeout, so retries always start afresh. Only
+ * transport failures and timeouts are retried and count for the circuit breaker; requests the service rejected and
+ * other failures raised by the call itself, see {@link #isTransient(WssServiceException)}, are thrown right away.
+ */
+public class ResilientInvoker
+{
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF = 2000L;
+    public static final long DEFAULT_MAX_BACKOFF = 30 * 1000L;
+    public static final long DEFAULT_TIMEOUT = 0L;
+
+    private static final String LOG_COMPONENT = "ResilientInvoker";
+    private static final ExecutorService CALL_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, "whitesource-service-call");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * A call of the service, e.g. checkPolicies or update.
+     */
+    public interface ServiceCall<T>
+    {
+        T call(WhitesourceService service) throws WssServiceException;
+    }
+
+    private final Logger log = LoggerFactory.getLogger(ResilientInvoker.class);
+    private final Random random = new Random();
+    private final ServiceClientPool clientPool;
+    private final ServiceSettings settings;
+    private final CircuitBreaker circuitBreaker;
+    private final BuildLogger buildLogger;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final long timeout;
+
+    /**
+     * @param buildLogger
+     *            - log to note retries in, null outside of a build.
+     * @param timeout
+     *            - milliseconds to wait for each attempt, 0 to wait indefinitely.
+     */
+    public ResilientInvoker(final ServiceClientPool clientPool, final ServiceSettings settings,
+            final CircuitBreaker circuitBreaker, final BuildLogger buildLogger, final int maxAttempts,
+            final long initialBackoff, final long maxBackoff, final long timeout)
+    {
+        this.clientPool = clientPool;
+        this.settings = settings;
+        this.circuitBreaker = circuitBreaker;
+        this.buildLogger = buildLogger;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return an invoker using the shared client pool and circuit breaker of this agent.
+     */
+    public static ResilientInvoker create(final ServiceSettings settings, final BuildLogger buildLogger,
+            final int maxAttempts, final long timeout)
+    {
+        return new ResilientInvoker(ServiceClientPool.getShared(), settings,
+                CircuitBreaker.getShared(settings.getServiceUrl()), buildLogger, maxAttempts, DEFAULT_INITIAL_BACKOFF,
+                DEFAULT_MAX_BACKOFF, timeout);
+    }
+
+    /**
+     * @param operation
+     *            - name of the call for log messages.
+     * @throws WssServiceException
+     *             - the failure of the last attempt, the first failure which is not transient, or if the circuit is
+     *             open.
+     */
+    public <T> T invoke(final String operation, final ServiceCall<T> call) throws WssServiceException
+    {
+        WssServiceException failure = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++)
+        {
+            if (!circuitBreaker.allowRequest())
+            {
+                throw new WssServiceException("White Source at " + settings.getServiceUrl()
+                        + " failed repeatedly, not trying to " + operation + " for another "
+                        + circuitBreaker.getRemainingOpenTime() / 1000 + " s", failure);
+            }
+
+            // every allowed request must record an outcome, otherwise a trial call would keep the circuit open
+            boolean recorded = false;
+            try
+            {
+                final T result = attempt(call);
+                circuitBreaker.recordSuccess();
+                recorded = true;
+                return result;
+            }
+            catch (WssServiceException e)
+            {
+                if (!isTransient(e))
+                {
+                    throw e;
+                }
+
+                circuitBreaker.recordFailure();
+                recorded = true;
+                failure = e;
+                log.warn(WssUtils.logMsg(LOG_COMPONENT, "Trying to " + operation + " failed (attempt " + attempt
+                        + "): " + e.getMessage()));
+            }
+            finally
+            {
+                if (!recorded)
+                {
+                    // rejected requests and errors like NoClassDefFoundError say nothing about the endpoint
+                    circuitBreaker.recordIgnored();
+                }
+            }
+
+            if (attempt < maxAttempts)
+            {
+                final long backoff = getBackoff(attempt);
+                if (buildLogger != null)
+                {
+                    buildLogger.addBuildLogEntry("Trying to " + operation + " failed, retrying in " + backoff
+                            + " ms: " + failure.getMessage());
+                }
+                try
+                {
+                    Thread.sleep(backoff);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new WssServiceException("Interrupted while waiting to " + operation, failure);
+                }
+            }
+        }
+
+        throw failure;
+    }
+
+    /**
+     * @return false if the failure was raised by the call itself rather than by the connection, e.g. a request
+     *         rejected by the service, an unreadable response or a bug, as retrying won't help then.
+     */
+    public static boolean isTransient(final WssServiceException failure)
+    {
+        // the service client drops the causes of I/O errors, hence the absence of a runtime cause is all there is
+        for (Throwable cause = failure.getCause(); cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof RuntimeException || cause instanceof Error)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the delay before the given retry, doubling with each attempt up to the maximum and randomized between
+     *         half and all of it, so concurrent tasks don't retry in lockstep.
+     */
+    public long getBackoff(final int attempt)
+    {
+        final long delay = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 30));
+        final long half = delay / 2;
+        synchronized (random)
+        {
+            return half + (half > 0 ? (long) (random.nextDouble() * (delay - half)) : 0);
+        }
+    }
+
+    private <T> T attempt(final ServiceCall<T> call) throws WssServiceException
+    {
+        final WhitesourceService service = clientPool.checkout(settings);
+        boolean reusable = false;
+        try
+        {
+            final T result = timeout > 0 ? callWithTimeout(call, service) : call.call(service);
+            reusable = true;
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            throw new WssServiceException(e.getMessage(), e);
+        }
+        finally
+        {
+            if (reusable)
+            {
+                clientPool.checkin(service);
+            }
+            else
+            {
+                clientPool.invalidate(service);
+            }
+        }
+    }
+
+    private <T> T callWithTimeout(final ServiceCall<T> call, final WhitesourceService service)
+            throws WssServiceException
+    {
+        final Future<T> future = CALL_EXECUTOR.submit(new Callable<T>()
+        {
+            @Override
+            public T call() throws WssServiceException
+            {
+                return call.call(service);
+            }
+        });
+
+        try
+        {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            future.cancel(true);
+            throw new WssServiceException("No response within " + timeout + " ms", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new WssServiceException("Interrupted while waiting for a response", e);
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof WssServiceException)
+            {
+                throw (WssServiceException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new WssServiceException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2012 WhiteSource Software Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.whitesource.bamboo.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.bamboo.agent.CircuitBreaker;
+import org.whitesource.bamboo.agent.InventorySpool;
+import org.whitesource.bamboo.agent.ServiceClientPool;
+import org.whitesource.bamboo.agent.ServiceSettings;
+import org.whitesource.bamboo.agent.WssUtils;
+
+/**
+ * Background forwarder sending the updates of an {@link InventorySpool} to White Source, oldest first.
+ * 
+ * The forwarder runs on a daemon thread started by {@link #wakeUp(ServiceSettings)} and ending once the spool is
+ * empty. If an update can't be sent, the later ones of the same projects and API key wait as well, so updates of a
+ * project are never sent out of order, while the others go ahead; forwarding is retried after a delay doubling up to
+ * {@link #MAX_RETRY_DELAY}. An update rejected by White Source, or failing {@link #DEFAULT_MAX_ATTEMPTS} times, is set
+ * aside. The forwarder uses a circuit breaker of its own, so its retries don't make the builds' requests fail fast.
+ */
+public class SpoolForwarder implements Runnable
+{
+    public static final long DEFAULT_RETRY_DELAY = 60 * 1000L;
+    public static final long MAX_RETRY_DELAY = 15 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    private static final String LOG_COMPONENT = "SpoolForwarder";
+    private static SpoolForwarder shared;
+
+    private final Logger log = LoggerFactory.getLogger(SpoolForwarder.class);
+    private final InventorySpool spool;
+    private final long initialRetryDelay;
+    private final int maxAttempts;
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+            CircuitBreaker.DEFAULT_OPEN_INTERVAL);
+    // held while an update is sent or the spool is changed otherwise
+    private final Object sendLock = new Object();
+    // failed attempts by spool file name, as long as the agent runs
+    private final Map<String, Integer> attempts = new HashMap<String, Integer>();
+    private ServiceSettings settings;
+    private Thread thread;
+    private boolean wakeUpPending;
+
+    public SpoolForwarder(final InventorySpool spool, final long initialRetryDelay)
+    {
+        this(spool, initialRetryDelay, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * @param maxAttempts
+     *            - number of times an update is tried before setting it aside.
+     */
+    public SpoolForwarder(final InventorySpool spool, final long initialRetryDelay, final int maxAttempts)
+    {
+        this.spool = spool;
+        this.initialRetryDelay = initialRetryDelay;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * @return the forwarder of the default spool of this agent.
+     */
+    public static synchronized SpoolForwarder getShared()
+    {
+        if (shared == null)
+        {
+            shared = new SpoolForwarder(InventorySpool.openDefault(), DEFAULT_RETRY_DELAY);
+        }
+
+        return shared;
+    }
+
+    public InventorySpool getSpool()
+    {
+        return spool;
+    }
+
+    /**
+     * Starts forwarding right away, using the given settings from now on.
+     */
+    public synchronized void wakeUp(final ServiceSettings serviceSettings)
+    {
+        settings = serviceSettings;
+        wakeUpPending = true;
+        if (thread == null)
+        {
+            thread = new Thread(this, "whitesource-spool-forwarder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        else
+        {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        long retryDelay = initialRetryDelay;
+        try
+        {
+            while (true)
+            {
+                final ServiceSettings currentSettings;
+                synchronized (this)
+                {
+                    wakeUpPending = false;
+                    currentSettings = settings;
+                }
+
+                final int remaining = forward(currentSettings);
+                synchronized (this)
+                {
+                    if (remaining == 0 && !wakeUpPending)
+                    {
+                        thread = null;
+                        return;
+                    }
+                    if (!wakeUpPending)
+                    {
+                        log.info(WssUtils.logMsg(LOG_COMPONENT, remaining + " spooled updates left, retrying in "
+                                + retryDelay / 1000 + " s"));
+                        wait(retryDelay);
+                        retryDelay = Math.min(MAX_RETRY_DELAY, retryDelay * 2);
+                    }
+                    else
+                    {
+                        retryDelay = initialRetryDelay;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            synchronized (this)
+            {
+                thread = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the given projects from older spooled updates, since they are about to be sent directly, see
+     * {@link InventorySpool#supersede}. Waits for an update being forwarded right now.
+     * 
+     * @return the number of projects dropped.
+     */
+    public int supersede(final String apiKey, final Collection<AgentProjectInfo> projectInfos) throws IOException
+    {
+        synchronized (sendLock)
+        {
+            return spool.list().isEmpty() ? 0 : spool.supersede(apiKey, projectInfos);
+        }
+    }
+
+    /**
+     * Sends the spooled updates in order, holding back the later updates of projects whose update couldn't be sent.
+     * 
+     * @return the number of updates left in the spool.
+     */
+    public int forward(final ServiceSettings serviceSettings)
+    {
+        final ResilientInvoker invoker = new ResilientInvoker(ServiceClientPool.getShared(), serviceSettings,
+                circuitBreaker, null, 1, ResilientInvoker.DEFAULT_INITIAL_BACKOFF, ResilientInvoker.DEFAULT_MAX_BACKOFF,
+                ResilientInvoker.DEFAULT_TIMEOUT);
+        final Set<String> heldBackKeys = new HashSet<String>();
+        for (File spoolFile : spool.list())
+        {
+            if (circuitBreaker.getRemainingOpenTime() > 0)
+            {
+                log.warn(WssUtils.logMsg(LOG_COMPONENT, "White Source failed repeatedly, not forwarding for another "
+                        + circuitBreaker.getRemainingOpenTime() / 1000 + " s"));
+                break;
+            }
+
+            synchronized (sendLock)
+            {
+                forward(invoker, spoolFile, heldBackKeys);
+            }
+        }
+
+        return spool.list().size();
+    }
+
+    /**
+     * Sends the update unless an earlier update of one of its projects was held back, in which case it is held back as
+     * well.
+     */
+    private void forward(final ResilientInvoker invoker, final File spoolFile, final Set<String> heldBackKeys)
+    {
+        if (!spoolFile.isFile())
+        {
+            // superseded meanwhile
+            return;
+        }
+
+        final List<String> keys;
+        final InventorySpool.SpooledUpdate update;
+        try
+        {
+            keys = spool.readKeys(spoolFile);
+            if (!Collections.disjoint(keys, heldBackKeys))
+            {
+                heldBackKeys.addAll(keys);
+                return;
+            }
+            update = spool.read(spoolFile);
+        }
+        catch (IOException e)
+        {
+            log.error(WssUtils.logMsg(LOG_COMPONENT, "Setting aside unreadable " + spoolFile + ": " + e));
+            spool.reject(spoolFile);
+            return;
+        }
+
+        try
+        {
+            final UpdateInventoryResult result = invoker.invoke("forward " + spoolFile.getName(),
+                    new ResilientInvoker.ServiceCall<UpdateInventoryResult>()
+                    {
+                        @Override
+                        public UpdateInventoryResult call(final WhitesourceService service) throws WssServiceException
+                        {
+                            return send(service, update);
+                        }
+                    });
+            log.info(WssUtils.logMsg(LOG_COMPONENT, "Forwarded " + update.getProjectInfos().size()
+                    + " projects from " + spoolFile.getName() + " to organization " + result.getOrganization()));
+            attempts.remove(spoolFile.getName());
+            spool.remove(spoolFile);
+        }
+        catch (WssServiceException e)
+        {
+            final Integer previousAttempts = attempts.get(spoolFile.getName());
+            final int attempt = previousAttempts == null ? 1 : previousAttempts + 1;
+            if (!ResilientInvoker.isTransient(e) || attempt >= maxAttempts)
+            {
+                log.error(WssUtils.logMsg(LOG_COMPONENT, "Setting aside " + spoolFile.getName() + " after " + attempt
+                        + " attempts: " + e.getMessage()));
+                attempts.remove(spoolFile.getName());
+                spool.reject(spoolFile);
+                return;
+            }
+
+            log.warn(WssUtils.logMsg(LOG_COMPONENT, "Forwarding " + spoolFile.getName() + " failed (attempt "
+                    + attempt + "): " + e.getMessage()));
+            attempts.put(spoolFile.getName(), attempt);
+            heldBackKeys.addAll(keys);
+        }
+        catch (IOException e)
+        {
+            // sent already, but would be sent again
+            log.error(WssUtils.logMsg(LOG_COMPONENT, e.getMessage()));
+            heldBackKeys.addAll(keys);
+        }
+    }
+
+    protected UpdateInventoryResult send(final WhitesourceService service, final InventorySpool.SpooledUpdate update)
+            throws WssServiceException
+    {
+        return service.update(update.getApiKey(), update.getProjectInfos());
+    }
+}
@@ -20,13 +20,32 @@
 	[@ww.label labelKey="org.whitesource.bamboo.plugins.projectType" name="projectType"/]
 [/#if]
 [@ww.textfield labelKey="org.whitesource.bamboo.plugins.projectToken" name="projectToken" required='false'/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.cacheChecksums" name="cacheChecksums"/]
+[@ww.textfield labelKey="org.whitesource.bamboo.plugins.hashingThreads" name="hashingThreads" required='false'/]
+[@ww.textfield labelKey="org.whitesource.bamboo.plugins.updateBatchSize" name="updateBatchSize" required='false'/]
+[@ww.textfield labelKey="org.whitesource.bamboo.plugins.serviceAttempts" name="serviceAttempts" required='false'/]
+[@ww.textfield labelKey="org.whitesource.bamboo.plugins.serviceTimeout" name="serviceTimeout" required='false'/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.pipelinedUpdate" name="pipelinedUpdate"/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.spoolOnFailure" name="spoolOnFailure"/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.asyncUpdate" name="asyncUpdate"/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.skipUnchanged" name="skipUnchanged"/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.compressRequests" name="compressRequests"/]
+[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.streamingReport" name="streamingReport"/]
 [@ui.bambooSection dependsOn='projectType' showOn='Maven']
 	[@ww.textfield labelKey="org.whitesource.bamboo.plugins.moduleTokens" name="moduleTokens" required='false'/]
 	[@ww.textfield labelKey="org.whitesource.bamboo.plugins.modulesIncludePattern" name="modulesIncludePattern" required='false'/]
 	[@ww.textfield labelKey="org.whitesource.bamboo.plugins.modulesExcludePattern" name="modulesExcludePattern" required='false'/]
 	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.ignorePOM" name="ignorePOM"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.parallelModules" name="parallelModules"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.cacheModels" name="cacheModels"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.useSha1Files" name="useSha1Files"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.verifySha1Files" name="verifySha1Files"/]
 [/@ui.bambooSection]
 [@ui.bambooSection dependsOn='projectType' showOn='Freestyle']
 	[@ww.textfield labelKey="org.whitesource.bamboo.plugins.filesIncludePattern" name="filesIncludePattern" required='true'/]
 	[@ww.textfield labelKey="org.whitesource.bamboo.plugins.filesExcludePattern" name="filesExcludePattern" required='false'/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.incrementalScan" name="incrementalScan"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.scanArchives" name="scanArchives"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.mergeDuplicates" name="mergeDuplicates"/]
+	[@ww.checkbox labelKey="org.whitesource.bamboo.plugins.compactInventory" name="compactInventory"/]
 [/@ui.bambooSection]
\ No newline at end of file
@@ -0,0 +1,125 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.bamboo.agent.ArchiveScanner;
+import org.whitesource.bamboo.agent.HashingPipeline;
+
+public class ArchiveScannerTest
+{
+    protected static final String LIBRARY_CONTENT = "x\n";
+    protected static final String LIBRARY_SHA1 = "6fcf9dfbd479ed82697fee719b9f8c610a11ff2a";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIsArchive()
+    {
+        assertThat(ArchiveScanner.isArchive("app.war")).isTrue();
+        assertThat(ArchiveScanner.isArchive("dist/APP.EAR")).isTrue();
+        assertThat(ArchiveScanner.isArchive("dist.zip")).isTrue();
+        assertThat(ArchiveScanner.isArchive("library.jar")).isFalse();
+        assertThat(ArchiveScanner.isLibrary("WEB-INF/lib/library.jar")).isTrue();
+    }
+
+    @Test
+    public void testNestedLibraries() throws IOException
+    {
+        File ear = createEar();
+
+        List<DependencyInfo> libraries = scan(new ArchiveScanner(ArchiveScanner.DEFAULT_MAX_DEPTH), ear, 2);
+        assertThat(libraries).hasSize(2);
+        assertThat(libraries.get(0).getSystemPath()).isEqualTo(ear.getAbsolutePath() + "!/lib/library.jar");
+        assertThat(libraries.get(0).getArtifactId()).isEqualTo("library.jar");
+        assertThat(libraries.get(0).getSha1()).isEqualTo(LIBRARY_SHA1);
+        assertThat(libraries.get(1).getSystemPath()).isEqualTo(
+                ear.getAbsolutePath() + "!/web.war!/WEB-INF/lib/web-library.jar");
+        assertThat(libraries.get(1).getArtifactId()).isEqualTo("web-library.jar");
+        assertThat(libraries.get(1).getSha1()).isEqualTo(LIBRARY_SHA1);
+    }
+
+    @Test
+    public void testMaxDepth() throws IOException
+    {
+        File ear = createEar();
+
+        List<DependencyInfo> libraries = scan(new ArchiveScanner(1), ear, 1);
+        assertThat(libraries).hasSize(1);
+        assertThat(libraries.get(0).getArtifactId()).isEqualTo("library.jar");
+    }
+
+    @Test
+    public void testUnreadableArchive() throws IOException
+    {
+        File archive = folder.newFile("broken.zip");
+
+        assertThat(scan(new ArchiveScanner(ArchiveScanner.DEFAULT_MAX_DEPTH), archive, 1)).isEmpty();
+    }
+
+    private List<DependencyInfo> scan(final ArchiveScanner scanner, final File archive, final int threads)
+    {
+        List<DependencyInfo> libraries = new ArrayList<DependencyInfo>();
+        HashingPipeline pipeline = new HashingPipeline(threads);
+        try
+        {
+            for (Future<List<DependencyInfo>> future : scanner.scan(archive, pipeline))
+            {
+                libraries.addAll(HashingPipeline.await(future));
+            }
+        }
+        finally
+        {
+            pipeline.shutdown();
+        }
+
+        return libraries;
+    }
+
+    private File createEar() throws IOException
+    {
+        ByteArrayOutputStream war = new ByteArrayOutputStream();
+        ZipOutputStream warOut = new ZipOutputStream(war);
+        addEntry(warOut, "WEB-INF/web.xml", "<web-app/>".getBytes("UTF-8"));
+        addEntry(warOut, "WEB-INF/lib/web-library.jar", LIBRARY_CONTENT.getBytes("UTF-8"));
+        warOut.close();
+
+        File ear = new File(folder.getRoot(), "app.ear");
+        OutputStream out = new FileOutputStream(ear);
+        ZipOutputStream earOut = new ZipOutputStream(out);
+        try
+        {
+            addEntry(earOut, "lib/library.jar", LIBRARY_CONTENT.getBytes("UTF-8"));
+            addEntry(earOut, "web.war", war.toByteArray());
+        }
+        finally
+        {
+            earOut.close();
+        }
+
+        return ear;
+    }
+
+    private static void addEntry(final ZipOutputStream out, final String name, final byte[] content)
+            throws IOException
+    {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,115 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.bamboo.agent.ChecksumCache;
+import org.whitesource.bamboo.agent.ChecksumCache.Key;
+
+public class ChecksumCacheTest
+{
+    protected static final String SHA1 = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+    protected static final String OTHER_SHA1 = "de9f2c7fd25e1b3afad3e85a0bd17d9b100db4b3";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheFile;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        cacheFile = new File(folder.getRoot(), "cache/" + ChecksumCache.DEFAULT_CACHE_FILE);
+        file = folder.newFile("dependency.jar");
+        FileUtils.writeStringToFile(file, "content", "UTF-8");
+    }
+
+    @Test
+    public void testGetAfterPut()
+    {
+        ChecksumCache cache = new ChecksumCache(cacheFile, 10);
+        Key key = cache.keyFor(file);
+        assertThat(cache.get(key)).isNull();
+        cache.put(key, SHA1);
+        assertThat(cache.get(cache.keyFor(file))).isEqualTo(SHA1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void testModifiedFileMisses() throws IOException
+    {
+        ChecksumCache cache = new ChecksumCache(cacheFile, 10);
+        cache.put(cache.keyFor(file), SHA1);
+        FileUtils.writeStringToFile(file, "modified content", "UTF-8");
+        assertThat(cache.get(cache.keyFor(file))).isNull();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException
+    {
+        ChecksumCache cache = new ChecksumCache(cacheFile, 10);
+        cache.put(cache.keyFor(file), SHA1);
+        cache.save();
+        assertThat(cacheFile).exists();
+
+        ChecksumCache reloaded = new ChecksumCache(cacheFile, 10);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(1);
+        assertThat(reloaded.get(reloaded.keyFor(file))).isEqualTo(SHA1);
+    }
+
+    @Test
+    public void testConcurrentSavesAreMerged() throws IOException
+    {
+        ChecksumCache first = new ChecksumCache(cacheFile, 10);
+        ChecksumCache second = new ChecksumCache(cacheFile, 10);
+        first.load();
+        second.load();
+        first.put(new Key("/first", 1, 1), SHA1);
+        second.put(new Key("/second", 1, 1), OTHER_SHA1);
+        first.save();
+        second.save();
+
+        ChecksumCache reloaded = new ChecksumCache(cacheFile, 10);
+        reloaded.load();
+        assertThat(reloaded.get(new Key("/first", 1, 1))).isEqualTo(SHA1);
+        assertThat(reloaded.get(new Key("/second", 1, 1))).isEqualTo(OTHER_SHA1);
+        assertThat(cacheFile.getParentFile().list()).containsOnly(ChecksumCache.DEFAULT_CACHE_FILE,
+                ChecksumCache.DEFAULT_CACHE_FILE + ".lock");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        ChecksumCache cache = new ChecksumCache(cacheFile, 2);
+        Key first = new Key("/first", 1, 1);
+        Key second = new Key("/second", 1, 1);
+        Key third = new Key("/third", 1, 1);
+        cache.put(first, SHA1);
+        cache.put(second, OTHER_SHA1);
+        assertThat(cache.get(first)).isEqualTo(SHA1);
+        cache.put(third, SHA1);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(second)).isNull();
+        assertThat(cache.get(first)).isEqualTo(SHA1);
+        assertThat(cache.get(third)).isEqualTo(SHA1);
+    }
+
+    @Test
+    public void testUnreadableCacheFileIsIgnored() throws IOException
+    {
+        FileUtils.writeStringToFile(cacheFile, "garbage", "UTF-8");
+        ChecksumCache cache = new ChecksumCache(cacheFile, 10);
+        cache.load();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+}
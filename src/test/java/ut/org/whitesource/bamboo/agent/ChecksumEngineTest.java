@@ -0,0 +1,56 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.ChecksumUtils;
+import org.whitesource.bamboo.agent.ChecksumEngine;
+
+public class ChecksumEngineTest
+{
+    protected static final String EMPTY_SHA1 = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEmptyFile() throws IOException
+    {
+        File file = folder.newFile("empty.jar");
+        assertThat(ChecksumEngine.calculateSha1(file)).isEqualTo(EMPTY_SHA1);
+        assertThat(ChecksumEngine.calculateSha1Buffered(file)).isEqualTo(EMPTY_SHA1);
+    }
+
+    @Test
+    public void testMatchesChecksumUtils() throws IOException
+    {
+        // spans several buffers, the last of which is partial
+        File file = createFile("dependency.jar", 3 * 64 * 1024 + 17);
+        String expected = ChecksumUtils.calculateSHA1(file);
+        assertThat(ChecksumEngine.calculateSha1(file)).isEqualTo(expected);
+        assertThat(ChecksumEngine.calculateSha1Buffered(file)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testLargeFile() throws IOException
+    {
+        File file = createFile("distribution.zip", 8 * 1024 * 1024 + 1);
+        assertThat(ChecksumEngine.calculateSha1(file)).isEqualTo(ChecksumUtils.calculateSHA1(file));
+    }
+
+    private File createFile(final String name, final int size) throws IOException
+    {
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        File file = folder.newFile(name);
+        FileUtils.writeByteArrayToFile(file, content);
+        return file;
+    }
+}
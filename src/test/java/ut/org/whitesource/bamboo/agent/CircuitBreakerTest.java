@@ -0,0 +1,45 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.whitesource.bamboo.agent.CircuitBreaker;
+
+public class CircuitBreakerTest
+{
+    @Test
+    public void testOpensAfterConsecutiveFailures()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000L);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertThat(breaker.allowRequest()).isTrue();
+
+        breaker.recordFailure();
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        assertThat(breaker.getRemainingOpenTime()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testSingleTrialAfterOpenInterval() throws InterruptedException
+    {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50L);
+        breaker.recordFailure();
+        Thread.sleep(100L);
+
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.allowRequest()).isFalse();
+        breaker.recordFailure();
+        assertThat(breaker.allowRequest()).isFalse();
+
+        Thread.sleep(100L);
+        assertThat(breaker.allowRequest()).isTrue();
+        breaker.recordSuccess();
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.allowRequest()).isTrue();
+    }
+}
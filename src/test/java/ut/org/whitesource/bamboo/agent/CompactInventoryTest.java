@@ -0,0 +1,141 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.bamboo.agent.CompactInventory;
+
+public class CompactInventoryTest
+{
+    protected static final String SHA1 = "3f786850e387550fdab836ed7e6dc881de23001b";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordsInMemory()
+    {
+        CompactInventory inventory = new CompactInventory(folder.getRoot(), CompactInventory.DEFAULT_SPILL_THRESHOLD);
+        inventory.add(createDependencyInfo("/workspace/lib/a.jar", SHA1));
+        inventory.add(createDependencyInfo("/workspace/lib/b.jar", null));
+        inventory.add(createDependencyInfo("/workspace/app.war!/WEB-INF/lib/c.jar", "NOT-A-CHECKSUM"));
+
+        assertThat(inventory.isSpilled()).isFalse();
+        assertThat(inventory.size()).isEqualTo(3);
+        assertThat(describe(inventory)).containsExactly("/workspace/lib/a.jar|a.jar|" + SHA1,
+                "/workspace/lib/b.jar|b.jar|null", "/workspace/app.war!/WEB-INF/lib/c.jar|c.jar|NOT-A-CHECKSUM");
+    }
+
+    @Test
+    public void testSpilledRecords()
+    {
+        CompactInventory inventory = new CompactInventory(new File(folder.getRoot(), "spill"), 100);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 50; i++)
+        {
+            DependencyInfo dependencyInfo = createDependencyInfo("/workspace/lib" + (i % 3) + "/" + i + ".jar", SHA1);
+            inventory.add(dependencyInfo);
+            expected.add(dependencyInfo.getSystemPath() + "|" + i + ".jar|" + SHA1);
+        }
+
+        assertThat(inventory.isSpilled()).isTrue();
+        assertThat(describe(inventory)).isEqualTo(expected);
+        // iterating twice reads the records again
+        assertThat(describe(inventory)).isEqualTo(expected);
+
+        inventory.close();
+        assertThat(new File(folder.getRoot(), "spill").list()).isEmpty();
+    }
+
+    @Test
+    public void testCloseClosesAbandonedIterators()
+    {
+        File spillDirectory = new File(folder.getRoot(), "spill");
+        CompactInventory inventory = new CompactInventory(spillDirectory, 100);
+        for (int i = 0; i < 50; i++)
+        {
+            inventory.add(createDependencyInfo("/workspace/lib/" + i + ".jar", SHA1));
+        }
+        Iterator<DependencyInfo> iterator = inventory.iterator();
+        iterator.next();
+
+        inventory.close();
+        assertThat(spillDirectory.list()).isEmpty();
+        try
+        {
+            iterator.next();
+            fail("expected an IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // the abandoned iterator can't read on
+        }
+    }
+
+    @Test
+    public void testDeleteStaleSpillFiles() throws IOException
+    {
+        File stale = folder.newFile("inventory-1.bin");
+        stale.setLastModified(System.currentTimeMillis() - 2 * CompactInventory.STALE_SPILL_FILE_AGE);
+        File recent = folder.newFile("inventory-2.bin");
+        File other = folder.newFile("other.bin");
+        other.setLastModified(stale.lastModified());
+
+        assertThat(CompactInventory.deleteStaleSpillFiles(folder.getRoot(), CompactInventory.STALE_SPILL_FILE_AGE))
+                .isEqualTo(1);
+        assertThat(stale).doesNotExist();
+        assertThat(recent).exists();
+        assertThat(other).exists();
+    }
+
+    @Test
+    public void testSerializedAsList() throws Exception
+    {
+        CompactInventory inventory = new CompactInventory(folder.getRoot(), 100);
+        inventory.add(createDependencyInfo("/workspace/lib/a.jar", SHA1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(inventory);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertThat(copy).isInstanceOf(ArrayList.class);
+        assertThat(describe((Collection<?>) copy)).containsExactly("/workspace/lib/a.jar|a.jar|" + SHA1);
+    }
+
+    private static DependencyInfo createDependencyInfo(final String path, final String sha1)
+    {
+        DependencyInfo dependencyInfo = new DependencyInfo();
+        dependencyInfo.setSystemPath(path);
+        dependencyInfo.setArtifactId(path.substring(path.lastIndexOf('/') + 1));
+        dependencyInfo.setSha1(sha1);
+        return dependencyInfo;
+    }
+
+    private static List<String> describe(final Collection<?> dependencyInfos)
+    {
+        List<String> result = new ArrayList<String>();
+        for (Object dependencyInfo : dependencyInfos)
+        {
+            DependencyInfo info = (DependencyInfo) dependencyInfo;
+            result.add(info.getSystemPath() + "|" + info.getArtifactId() + "|" + info.getSha1());
+        }
+        return result;
+    }
+}
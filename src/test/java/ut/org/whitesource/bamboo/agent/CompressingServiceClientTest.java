@@ -0,0 +1,150 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.bamboo.agent.CompressingServiceClient;
+import org.whitesource.bamboo.agent.ServiceRejectedException;
+import org.whitesource.bamboo.agent.ServiceSettings;
+import org.whitesource.bamboo.agent.WssUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class CompressingServiceClientTest
+{
+    protected static final String API_KEY = "TestApiKey";
+    protected static final String PROJECT_TOKEN = "TestProjectToken";
+    protected static final String REJECTION = "{\"envelopeVersion\":\"2.1.0\",\"status\":2,"
+            + "\"message\":\"Invalid API key\",\"data\":null}";
+    protected static final String RESPONSE = "{\"envelopeVersion\":\"2.1.0\",\"status\":1,\"message\":\"ok\","
+            + "\"data\":\"{\\\"organization\\\":\\\"TestOrganization\\\",\\\"createdProjects\\\":[],"
+            + "\\\"updatedProjects\\\":[]}\"}";
+
+    private HttpServer server;
+    private String response = RESPONSE;
+    private String contentEncoding;
+    private byte[] body;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/agent", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                body = IOUtils.toByteArray(exchange.getRequestBody());
+                final byte[] content = response.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, content.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(content);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCompress() throws IOException
+    {
+        final String content = "diff=" + StringUtils.repeat("{\"groupId\":\"org.whitesource\"},", 1000);
+        final byte[] compressed = CompressingServiceClient.compress(new StringEntity(content, "UTF-8"));
+
+        assertThat(compressed.length).isLessThan(content.length() / 10);
+        final String decompressed = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(compressed)),
+                "UTF-8");
+        assertThat(decompressed).isEqualTo(content);
+    }
+
+    @Test
+    public void testSendsCompressedForm() throws Exception
+    {
+        final WhitesourceService service = WssUtils.createServiceClient(getSettings().withCompressRequests(true));
+        final AgentProjectInfo projectInfo = createProjectInfo();
+        try
+        {
+            final UpdateInventoryResult result = service.update(API_KEY, Arrays.asList(projectInfo));
+            assertThat(result.getOrganization()).isEqualTo("TestOrganization");
+        }
+        finally
+        {
+            service.shutdown();
+        }
+
+        assertThat(contentEncoding).isEqualTo(CompressingServiceClient.GZIP_ENCODING);
+        final Map<String, String> form = parseForm(IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(
+                body)), "UTF-8"));
+        assertThat(form.get("token")).isEqualTo(API_KEY);
+        assertThat(form.get("diff")).contains(PROJECT_TOKEN);
+    }
+
+    @Test(expected = ServiceRejectedException.class)
+    public void testRejectedRequest() throws Exception
+    {
+        response = REJECTION;
+        final WhitesourceService service = WssUtils.createServiceClient(getSettings());
+        try
+        {
+            service.update(API_KEY, Arrays.asList(createProjectInfo()));
+        }
+        finally
+        {
+            service.shutdown();
+        }
+    }
+
+    private ServiceSettings getSettings()
+    {
+        return new ServiceSettings("http://localhost:" + server.getAddress().getPort() + "/agent", null, 0, null,
+                null);
+    }
+
+    private AgentProjectInfo createProjectInfo()
+    {
+        final AgentProjectInfo projectInfo = new AgentProjectInfo();
+        projectInfo.setProjectToken(PROJECT_TOKEN);
+        return projectInfo;
+    }
+
+    private Map<String, String> parseForm(final String content) throws IOException
+    {
+        final Map<String, String> form = new HashMap<String, String>();
+        for (String parameter : content.split("&"))
+        {
+            final String[] nameAndValue = parameter.split("=", 2);
+            form.put(URLDecoder.decode(nameAndValue[0], "UTF-8"),
+                    nameAndValue.length > 1 ? URLDecoder.decode(nameAndValue[1], "UTF-8") : "");
+        }
+
+        return form;
+    }
+}
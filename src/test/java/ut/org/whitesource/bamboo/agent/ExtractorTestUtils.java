@@ -0,0 +1,69 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.bamboo.agent.BaseOssInfoExtractor;
+
+/**
+ * Helpers shared by the extractor tests.
+ */
+public final class ExtractorTestUtils
+{
+    private static final String dependenciesMismatch = "Number of dependencies doesn't match, expected:<[%s]> but was:<[%s]> - have you added/removed any dependencies?";
+
+    private ExtractorTestUtils()
+    {
+        // utility class
+    }
+
+    /**
+     * Asserts that a parallel extractor reports the same dependencies, in the same order, as a sequential one.
+     */
+    public static void assertParallelMatchesSequential(final BaseOssInfoExtractor sequential,
+            final BaseOssInfoExtractor parallel, final int expectedDependencies)
+    {
+        List<String> expected = describe(sequential.extract());
+        List<String> actual = describe(parallel.extract());
+        assertThat(actual.size()).overridingErrorMessage(dependenciesMismatch, expectedDependencies, actual.size())
+                .isEqualTo(expectedDependencies);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    /**
+     * @return one 'groupId:artifactId:version:systemPath=sha1' line per dependency of all projects.
+     */
+    public static List<String> describe(final Collection<AgentProjectInfo> projectInfos)
+    {
+        List<String> result = new ArrayList<String>();
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            for (DependencyInfo info : projectInfo.getDependencies())
+            {
+                result.add(info.getGroupId() + ":" + info.getArtifactId() + ":" + info.getVersion() + ":"
+                        + info.getSystemPath() + "=" + info.getSha1());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the 'groupId:artifactId:version' coordinates of each project.
+     */
+    public static List<String> describeProjects(final Collection<AgentProjectInfo> projectInfos)
+    {
+        List<String> result = new ArrayList<String>();
+        for (AgentProjectInfo projectInfo : projectInfos)
+        {
+            Coordinates coordinates = projectInfo.getCoordinates();
+            result.add(coordinates.getGroupId() + ":" + coordinates.getArtifactId() + ":" + coordinates.getVersion());
+        }
+        return result;
+    }
+}
@@ -1,12 +1,20 @@
 package ut.org.whitesource.bamboo.agent;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static ut.org.whitesource.bamboo.agent.ExtractorTestUtils.assertParallelMatchesSequential;
+import static ut.org.whitesource.bamboo.agent.ExtractorTestUtils.describe;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Collection;
+import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.bamboo.agent.BaseOssInfoExtractor;
 import org.whitesource.bamboo.agent.GenericOssInfoExtractor;
@@ -23,6 +31,9 @@ public class GenericOssInfoExtractorTest
     protected static final int NUM_WSS = 3;
     protected static final String dependenciesMismatch = "Number of dependencies doesn't match, expected:<[%s]> but was:<[%s]> - have you added/removed any dependencies?";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp() throws Exception
     {
@@ -68,4 +79,44 @@ public class GenericOssInfoExtractorTest
         assertThat(actual).overridingErrorMessage(dependenciesMismatch, NUM_ALL - NUM_WSS, actual).isEqualTo(
                 NUM_ALL - NUM_WSS);
     }
+
+    @Test
+    public void testExtractOssInfoParallelHashing()
+    {
+        BaseOssInfoExtractor sequential = new GenericOssInfoExtractor(PROJECT_NAME, PROJECT_TOKEN, PATTERN_ALL,
+                PATTERN_NONE, testDirectory, 1);
+        BaseOssInfoExtractor parallel = new GenericOssInfoExtractor(PROJECT_NAME, PROJECT_TOKEN, PATTERN_ALL,
+                PATTERN_NONE, testDirectory, 4);
+        assertParallelMatchesSequential(sequential, parallel, NUM_ALL);
+    }
+
+    @Test
+    public void testExtractOssInfoLinkedFiles() throws IOException
+    {
+        File library = new File(folder.newFolder("lib"), "library.jar");
+        FileUtils.writeStringToFile(library, "library", "UTF-8");
+        Files.createLink(new File(folder.getRoot(), "lib/link.jar").toPath(), library.toPath());
+
+        List<String> actual = describe(new GenericOssInfoExtractor(PROJECT_NAME, PROJECT_TOKEN, PATTERN_ALL,
+                PATTERN_NONE, folder.getRoot(), 2).extract());
+        assertThat(actual).hasSize(2);
+        assertThat(actual.get(0).substring(actual.get(0).indexOf('='))).isEqualTo(
+                actual.get(1).substring(actual.get(1).indexOf('=')));
+    }
+
+    @Test
+    public void testExtractOssInfoMergeDuplicates() throws IOException
+    {
+        File lib = folder.newFolder("lib");
+        FileUtils.writeStringToFile(new File(lib, "a.jar"), "library", "UTF-8");
+        FileUtils.writeStringToFile(new File(lib, "b.jar"), "library", "UTF-8");
+        FileUtils.writeStringToFile(new File(lib, "c.jar"), "other library", "UTF-8");
+
+        GenericOssInfoExtractor extractor = new GenericOssInfoExtractor(PROJECT_NAME, PROJECT_TOKEN, PATTERN_ALL,
+                PATTERN_NONE, folder.getRoot());
+        assertThat(describe(extractor.extract())).hasSize(3);
+
+        extractor.setMergeDuplicates(true);
+        assertThat(describe(extractor.extract())).hasSize(2);
+    }
 }
@@ -0,0 +1,96 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.whitesource.bamboo.agent.GlobMatcher;
+
+public class GlobMatcherTest
+{
+    protected static final List<String> NONE = Collections.emptyList();
+    protected static final List<String> PATHS = Arrays.asList("lib/a.jar", "lib/wss-api.jar", "lib/sub/b.jar",
+            "lib/a.zip", "src/lib/c.jar", "node_modules/x/lib/d.jar", "a.jar", ".jar", "lib/{a}.jar", "lib/a,b.jar",
+            "target/classes/e.jar", "target/f.war", "lib/g.JAR");
+    protected static final List<String> GLOBS = Arrays.asList("lib/*.jar", "lib/wss*.jar", "*.jar", "**/*.jar",
+            "lib/?.jar", "lib/*.{jar,zip}", "{lib,src/lib}/*.jar", "lib/\\{a\\}.jar", "lib/a\\,b.jar", "target/**",
+            "lib/[ab].jar", "*/lib/*");
+
+    @Test
+    public void testMatchesLikeRegularExpressions()
+    {
+        for (String include : GLOBS)
+        {
+            for (String exclude : GLOBS)
+            {
+                GlobMatcher matcher = new GlobMatcher(Arrays.asList(include), Arrays.asList(exclude));
+                Pattern includePattern = Pattern.compile(GlobMatcher.convertGlobToRegEx(include));
+                Pattern excludePattern = Pattern.compile(GlobMatcher.convertGlobToRegEx(exclude));
+                for (String path : PATHS)
+                {
+                    boolean expected = includePattern.matcher(path).matches()
+                            && !excludePattern.matcher(path).matches();
+                    assertThat(matcher.matches(path))
+                            .overridingErrorMessage("'%s' including '%s', excluding '%s'", path, include, exclude)
+                            .isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultiplePatterns()
+    {
+        GlobMatcher matcher = new GlobMatcher(GLOBS, Arrays.asList("lib/wss*.jar", "target/**"));
+        List<String> matches = new ArrayList<String>();
+        for (String path : PATHS)
+        {
+            if (matcher.matches(path))
+            {
+                matches.add(path);
+            }
+        }
+        assertThat(matches).containsExactly("lib/a.jar", "lib/sub/b.jar", "lib/a.zip", "src/lib/c.jar",
+                "node_modules/x/lib/d.jar", ".jar", "lib/{a}.jar", "lib/a,b.jar");
+    }
+
+    @Test
+    public void testCanMatchBelow()
+    {
+        GlobMatcher matcher = new GlobMatcher(Arrays.asList("lib/*.jar", "src/{main,test}/lib/*.jar"),
+                Arrays.asList("lib/excluded/**"));
+        assertThat(matcher.canMatchBelow("lib/")).isTrue();
+        assertThat(matcher.canMatchBelow("lib/sub/")).isTrue();
+        assertThat(matcher.canMatchBelow("src/")).isTrue();
+        assertThat(matcher.canMatchBelow("src/test/")).isTrue();
+        assertThat(matcher.canMatchBelow("src/site/")).isFalse();
+        assertThat(matcher.canMatchBelow("node_modules/")).isFalse();
+        assertThat(matcher.canMatchBelow(".git/")).isFalse();
+        assertThat(matcher.canMatchBelow("lib/excluded/")).isFalse();
+
+        // a single trailing '*' is stripped, so it doesn't exclude the subtree
+        matcher = new GlobMatcher(Arrays.asList("lib/*.jar"), Arrays.asList("lib/excluded/*"));
+        assertThat(matcher.canMatchBelow("lib/excluded/")).isTrue();
+        assertThat(matcher.matches("lib/excluded/a.jar")).isTrue();
+    }
+
+    @Test
+    public void testIncrementalMatching()
+    {
+        GlobMatcher matcher = new GlobMatcher(Arrays.asList("lib/*.jar"), NONE);
+        GlobMatcher.State directory = matcher.start().next("lib/");
+        assertThat(matcher.matches(directory.next("a.jar"), "lib/a.jar")).isTrue();
+        assertThat(matcher.matches(directory.next("a.zip"), "lib/a.zip")).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnclosedGroup()
+    {
+        new GlobMatcher(Arrays.asList("lib/{a,b.jar"), NONE);
+    }
+}
@@ -0,0 +1,125 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.bamboo.agent.InventorySpool;
+
+public class InventorySpoolTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InventorySpool spool;
+
+    @Before
+    public void setUp()
+    {
+        spool = new InventorySpool(new File(folder.getRoot(), InventorySpool.SPOOL_DIRECTORY));
+    }
+
+    @Test
+    public void testSpoolAndRead() throws IOException
+    {
+        assertThat(spool.list()).isEmpty();
+        File first = spool.spool("key", Arrays.asList(createProjectInfo("first")));
+        File second = spool.spool("key", Arrays.asList(createProjectInfo("second"), createProjectInfo("third")));
+
+        List<File> spoolFiles = spool.list();
+        assertThat(spoolFiles).containsExactly(first, second);
+        InventorySpool.SpooledUpdate update = spool.read(second);
+        assertThat(update.getApiKey()).isEqualTo("key");
+        assertThat(update.getProjectInfos()).hasSize(2);
+        assertThat(update.getProjectInfos().get(1).getCoordinates().getArtifactId()).isEqualTo("third");
+    }
+
+    @Test
+    public void testReadKeys() throws IOException
+    {
+        List<AgentProjectInfo> projectInfos = Arrays.asList(createProjectInfo("first"), createProjectInfo("second"));
+        File spoolFile = spool.spool("key", projectInfos);
+
+        assertThat(spool.readKeys(spoolFile)).isEqualTo(InventorySpool.keysOf("key", projectInfos));
+        assertThat(spool.readKeys(spoolFile)).hasSize(2).doesNotContain(
+                InventorySpool.keysOf("otherKey", projectInfos).toArray());
+    }
+
+    @Test
+    public void testConcurrentFirstSpool() throws Exception
+    {
+        List<Callable<File>> tasks = new ArrayList<Callable<File>>();
+        for (int i = 0; i < 8; i++)
+        {
+            tasks.add(new Callable<File>()
+            {
+                @Override
+                public File call() throws IOException
+                {
+                    return spool.spool("key", Arrays.asList(createProjectInfo("first")));
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try
+        {
+            for (Future<File> future : executor.invokeAll(tasks))
+            {
+                assertThat(future.get()).exists();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertThat(spool.list()).hasSize(tasks.size());
+    }
+
+    @Test
+    public void testOwnerOnly() throws IOException
+    {
+        File spoolFile = spool.spool("key", Arrays.asList(createProjectInfo("first")));
+        assertThat(spoolFile.canRead()).isTrue();
+        if (File.separatorChar == '/')
+        {
+            String permissions = PosixFilePermissions.toString(Files.getPosixFilePermissions(spoolFile.toPath()));
+            assertThat(permissions).isEqualTo("rw-------");
+        }
+    }
+
+    @Test
+    public void testRemoveAndReject() throws IOException
+    {
+        File first = spool.spool("key", Arrays.asList(createProjectInfo("first")));
+        File second = spool.spool("key", Arrays.asList(createProjectInfo("second")));
+        spool.remove(first);
+        spool.reject(second);
+
+        assertThat(spool.list()).isEmpty();
+        assertThat(first).doesNotExist();
+    }
+
+    private AgentProjectInfo createProjectInfo(final String artifactId)
+    {
+        AgentProjectInfo projectInfo = new AgentProjectInfo();
+        projectInfo.setCoordinates(new Coordinates("org.whitesource", artifactId, "1.0"));
+        return projectInfo;
+    }
+}
@@ -0,0 +1,141 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.bamboo.agent.InventoryStateStore;
+
+public class InventoryStateStoreTest
+{
+    protected static final String API_KEY = "TestApiKey";
+    protected static final String PROJECT_TOKEN = "TestProjectToken";
+    protected static final long MAX_AGE = 60000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File stateFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        stateFile = new File(folder.getRoot(), "state/PLAN-KEY.properties");
+    }
+
+    @Test
+    public void testDigestIgnoresDependencyOrder()
+    {
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar", "b.jar");
+        AgentProjectInfo reordered = createProjectInfo("b.jar", "a.jar");
+        assertThat(InventoryStateStore.digest(API_KEY, reordered)).isEqualTo(
+                InventoryStateStore.digest(API_KEY, projectInfo));
+        assertThat(InventoryStateStore.digest(API_KEY, createProjectInfo("a.jar"))).isNotEqualTo(
+                InventoryStateStore.digest(API_KEY, projectInfo));
+    }
+
+    @Test
+    public void testUnchangedAfterUpdate()
+    {
+        InventoryStateStore store = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar", "b.jar");
+        assertThat(store.isChanged(projectInfo)).isTrue();
+        store.markUpdated(Collections.singletonList(projectInfo));
+        assertThat(store.isChanged(projectInfo)).isFalse();
+        assertThat(store.isChanged(createProjectInfo("b.jar", "a.jar"))).isFalse();
+    }
+
+    @Test
+    public void testChangedChecksum()
+    {
+        InventoryStateStore store = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar");
+        store.markUpdated(Collections.singletonList(projectInfo));
+        projectInfo.getDependencies().iterator().next().setSha1("0000000000000000000000000000000000000000");
+        assertThat(store.isChanged(projectInfo)).isTrue();
+    }
+
+    @Test
+    public void testOtherApiKeyIsChanged() throws IOException
+    {
+        InventoryStateStore store = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar");
+        store.markUpdated(Collections.singletonList(projectInfo));
+        store.save();
+
+        InventoryStateStore otherOrganization = new InventoryStateStore(stateFile, "OtherApiKey", MAX_AGE);
+        otherOrganization.load();
+        assertThat(otherOrganization.isChanged(projectInfo)).isTrue();
+    }
+
+    @Test
+    public void testExpired()
+    {
+        InventoryStateStore store = new InventoryStateStore(stateFile, API_KEY, -1L);
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar");
+        store.markUpdated(Collections.singletonList(projectInfo));
+        assertThat(store.isChanged(projectInfo)).isTrue();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException
+    {
+        InventoryStateStore store = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar", "b.jar");
+        store.markUpdated(Collections.singletonList(projectInfo));
+        store.save();
+        assertThat(stateFile).exists();
+
+        InventoryStateStore reloaded = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        reloaded.load();
+        assertThat(reloaded.isChanged(projectInfo)).isFalse();
+    }
+
+    @Test
+    public void testConcurrentSavesAreMerged() throws IOException
+    {
+        InventoryStateStore first = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        InventoryStateStore second = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        first.load();
+        second.load();
+        AgentProjectInfo projectInfo = createProjectInfo("a.jar");
+        AgentProjectInfo otherProjectInfo = createProjectInfo("b.jar");
+        otherProjectInfo.setProjectToken("OtherProjectToken");
+        first.markUpdated(Collections.singletonList(projectInfo));
+        second.markUpdated(Collections.singletonList(otherProjectInfo));
+        first.save();
+        second.save();
+
+        InventoryStateStore reloaded = new InventoryStateStore(stateFile, API_KEY, MAX_AGE);
+        reloaded.load();
+        assertThat(reloaded.isChanged(projectInfo)).isFalse();
+        assertThat(reloaded.isChanged(otherProjectInfo)).isFalse();
+    }
+
+    private AgentProjectInfo createProjectInfo(final String... fileNames)
+    {
+        AgentProjectInfo projectInfo = new AgentProjectInfo();
+        projectInfo.setProjectToken(PROJECT_TOKEN);
+        List<DependencyInfo> dependencies = new ArrayList<DependencyInfo>();
+        for (String fileName : Arrays.asList(fileNames))
+        {
+            DependencyInfo dependency = new DependencyInfo();
+            dependency.setArtifactId(fileName);
+            dependency.setSha1(Integer.toHexString(fileName.hashCode()));
+            dependencies.add(dependency);
+        }
+        projectInfo.setDependencies(dependencies);
+        return projectInfo;
+    }
+}
@@ -0,0 +1,272 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Activation;
+import org.apache.maven.model.ActivationFile;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.bamboo.agent.MavenModelCache;
+
+public class MavenModelCacheTest
+{
+    protected static final String MODULE_ID = "org.whitesource:module:1.0";
+    protected static final String PARENT_ID = "org.whitesource:parent:1.0";
+    protected static final String SNAPSHOT_PARENT_ID = "org.whitesource:parent:1.1-SNAPSHOT";
+    protected static final String ENVIRONMENT = "environment";
+    protected static final String OTHER_ENVIRONMENT = "other environment";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheFile;
+    private File parentPom;
+    private File pom;
+    private String localRepository;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        localRepository = System.getProperty("maven.repo.local");
+        System.setProperty("maven.repo.local", folder.newFolder("repository").getPath());
+        cacheFile = new File(folder.getRoot(), "cache/" + MavenModelCache.DEFAULT_CACHE_FILE);
+        parentPom = folder.newFile("pom.xml");
+        FileUtils.writeStringToFile(parentPom, "<project><artifactId>parent</artifactId></project>", "UTF-8");
+        pom = new File(folder.newFolder("module"), "pom.xml");
+        FileUtils.writeStringToFile(pom, "<project><artifactId>module</artifactId></project>", "UTF-8");
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (localRepository == null)
+        {
+            System.clearProperty("maven.repo.local");
+        }
+        else
+        {
+            System.setProperty("maven.repo.local", localRepository);
+        }
+    }
+
+    @Test
+    public void testGetAfterPut()
+    {
+        MavenModelCache cache = new MavenModelCache(null, 10);
+        assertThat(cache.get(pom)).isNull();
+        cache.put(pom, createResult(PARENT_ID, parentPom));
+
+        Model model = cache.get(pom);
+        assertThat(model).isNotNull();
+        assertThat(model.getArtifactId()).isEqualTo("module");
+        assertThat(model.getPomFile()).isEqualTo(pom);
+        assertThat(cache.get(pom)).isNotSameAs(model);
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException
+    {
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10);
+        cache.put(pom, createResult(PARENT_ID, parentPom));
+        cache.save();
+        assertThat(cacheFile).exists();
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(1);
+        assertThat(reloaded.get(pom).getArtifactId()).isEqualTo("module");
+    }
+
+    @Test
+    public void testSavedOwnerOnly() throws IOException
+    {
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10);
+        cache.put(pom, createResult(PARENT_ID, parentPom));
+        cache.save();
+        assertThat(cacheFile.canRead()).isTrue();
+        if (File.separatorChar == '/')
+        {
+            String permissions = PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheFile.toPath()));
+            assertThat(permissions).isEqualTo("rw-------");
+        }
+    }
+
+    @Test
+    public void testModifiedParentMisses() throws IOException
+    {
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10);
+        cache.put(pom, createResult(PARENT_ID, parentPom));
+        cache.save();
+        FileUtils.writeStringToFile(parentPom, "<project><artifactId>changed</artifactId></project>", "UTF-8");
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10);
+        reloaded.load();
+        assertThat(reloaded.get(pom)).isNull();
+    }
+
+    @Test
+    public void testSnapshotParentIsNotSaved() throws IOException
+    {
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10);
+        cache.put(pom, createResult(SNAPSHOT_PARENT_ID, null));
+        assertThat(cache.get(pom)).isNotNull();
+        cache.save();
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testOtherEnvironmentMisses() throws IOException
+    {
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        cache.put(pom, createResult(PARENT_ID, parentPom));
+        cache.save();
+
+        MavenModelCache other = new MavenModelCache(cacheFile, 10, OTHER_ENVIRONMENT);
+        other.load();
+        assertThat(other.get(pom)).isNull();
+        MavenModelCache same = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        same.load();
+        assertThat(same.get(pom)).isNotNull();
+    }
+
+    @Test
+    public void testReferencedPropertyIsChecked() throws IOException
+    {
+        FileUtils.writeStringToFile(pom, "<project><artifactId>${ws.test.artifactId}</artifactId></project>",
+                "UTF-8");
+        System.setProperty("ws.test.artifactId", "module");
+        System.setProperty("ws.test.unreferenced", "first");
+        try
+        {
+            MavenModelCache cache = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+            cache.put(pom, createResult(PARENT_ID, parentPom));
+            cache.save();
+
+            System.setProperty("ws.test.unreferenced", "second");
+            MavenModelCache reloaded = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+            reloaded.load();
+            assertThat(reloaded.get(pom)).isNotNull();
+            System.setProperty("ws.test.artifactId", "changed");
+            assertThat(reloaded.get(pom)).isNull();
+        }
+        finally
+        {
+            System.clearProperty("ws.test.artifactId");
+            System.clearProperty("ws.test.unreferenced");
+        }
+    }
+
+    @Test
+    public void testRepositoryParentIsTracked() throws IOException
+    {
+        File repositoryPom = new File(System.getProperty("maven.repo.local"),
+                "org/whitesource/parent/1.0/parent-1.0.pom");
+        FileUtils.writeStringToFile(repositoryPom, "<project><artifactId>parent</artifactId></project>", "UTF-8");
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        cache.put(pom, createResult(PARENT_ID, null));
+        cache.save();
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        reloaded.load();
+        assertThat(reloaded.get(pom)).isNotNull();
+        FileUtils.writeStringToFile(repositoryPom, "<project><artifactId>changed</artifactId></project>", "UTF-8");
+        reloaded = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        reloaded.load();
+        assertThat(reloaded.get(pom)).isNull();
+    }
+
+    @Test
+    public void testMissingRepositoryParentIsNotSaved() throws IOException
+    {
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        cache.put(pom, createResult(PARENT_ID, null));
+        cache.save();
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSnapshotBomImportedByParentIsNotSaved() throws IOException
+    {
+        Dependency bom = new Dependency();
+        bom.setGroupId("org.whitesource");
+        bom.setArtifactId("bom");
+        bom.setVersion("1.0-SNAPSHOT");
+        bom.setType("pom");
+        bom.setScope("import");
+        DependencyManagement dependencyManagement = new DependencyManagement();
+        dependencyManagement.addDependency(bom);
+        ModelBuildingResult result = createResult(PARENT_ID, parentPom);
+        result.getRawModel(PARENT_ID).setDependencyManagement(dependencyManagement);
+
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        cache.put(pom, result);
+        assertThat(cache.get(pom)).isNotNull();
+        cache.save();
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFileActivatedProfileIsNotSaved() throws IOException
+    {
+        ActivationFile file = new ActivationFile();
+        file.setExists("${basedir}/marker");
+        Activation activation = new Activation();
+        activation.setFile(file);
+        Profile profile = new Profile();
+        profile.setActivation(activation);
+        ModelBuildingResult result = createResult(PARENT_ID, parentPom);
+        result.getRawModel(PARENT_ID).setProfiles(Arrays.asList(profile));
+
+        MavenModelCache cache = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        cache.put(pom, result);
+        cache.save();
+
+        MavenModelCache reloaded = new MavenModelCache(cacheFile, 10, ENVIRONMENT);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(0);
+    }
+
+    private ModelBuildingResult createResult(final String parentId, final File parentPomFile)
+    {
+        Model effectiveModel = new Model();
+        effectiveModel.setArtifactId("module");
+        effectiveModel.setPomFile(pom);
+        Model parentModel = new Model();
+        parentModel.setArtifactId("parent");
+        parentModel.setPomFile(parentPomFile);
+
+        ModelBuildingResult result = mock(ModelBuildingResult.class);
+        when(result.getModelIds()).thenReturn(Arrays.asList(MODULE_ID, parentId, ""));
+        when(result.getRawModel(parentId)).thenReturn(parentModel);
+        when(result.getEffectiveModel()).thenReturn(effectiveModel);
+        return result;
+    }
+}
@@ -1,13 +1,26 @@
 package ut.org.whitesource.bamboo.agent;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static ut.org.whitesource.bamboo.agent.ExtractorTestUtils.assertParallelMatchesSequential;
+import static ut.org.whitesource.bamboo.agent.ExtractorTestUtils.describeProjects;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 import org.whitesource.bamboo.agent.BaseOssInfoExtractor;
 import org.whitesource.bamboo.agent.MavenOssInfoExtractor;
@@ -23,6 +36,9 @@ public class MavenOssInfoExtractorTest
     protected static final int NUM_WSS = 3;
     protected static final String dependenciesMismatch = "Number of dependencies doesn't match, expected:<[%s]> but was:<[%s]> - have you added/removed any dependencies?";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void setUp() throws Exception
     {
@@ -70,4 +86,112 @@ public class MavenOssInfoExtractorTest
         assertThat(actual).overridingErrorMessage(dependenciesMismatch, NUM_ALL - NUM_WSS, actual).isEqualTo(
                 NUM_ALL - NUM_WSS);
     }
+
+    @Test
+    public void testExtractOssInfoParallel()
+    {
+        BaseOssInfoExtractor sequential = new MavenOssInfoExtractor(PROJECT_TOKEN, MODULE_TOKENS_EMPTY, PATTERN_NONE,
+                PATTERN_NONE, false, testDirectory, 1);
+        BaseOssInfoExtractor parallel = new MavenOssInfoExtractor(PROJECT_TOKEN, MODULE_TOKENS_EMPTY, PATTERN_NONE,
+                PATTERN_NONE, false, testDirectory, 4);
+        assertParallelMatchesSequential(sequential, parallel, NUM_ALL);
+    }
+
+    @Test
+    public void testParallelModulesMatchSequential() throws IOException
+    {
+        File root = folder.getRoot();
+        writePom(root, "root", "pom", "a", "broken", "b");
+        writePom(new File(root, "a"), "a", "jar");
+        writePom(new File(root, "b"), "b", "pom", "c");
+        writePom(new File(root, "b/c"), "c", "jar");
+        // a module which can't be read is skipped without affecting its siblings
+        FileUtils.writeStringToFile(new File(root, "broken/pom.xml"), "<project>", "UTF-8");
+
+        BaseOssInfoExtractor sequential = new MavenOssInfoExtractor(PROJECT_TOKEN, MODULE_TOKENS_EMPTY, PATTERN_NONE,
+                PATTERN_NONE, false, root, 1);
+        BaseOssInfoExtractor parallel = new MavenOssInfoExtractor(PROJECT_TOKEN, MODULE_TOKENS_EMPTY, PATTERN_NONE,
+                PATTERN_NONE, false, root, 4);
+        List<String> expected = describeProjects(sequential.extract());
+        assertThat(expected).containsExactly("test:root:1.0", "test:a:1.0", "test:b:1.0", "test:c:1.0");
+        assertThat(describeProjects(parallel.extract())).isEqualTo(expected);
+    }
+
+    @Test
+    public void testLookupTableMatchesClassifierAndType()
+    {
+        Artifact plain = createArtifact(null, "jar");
+        Artifact untyped = createArtifact(null, null);
+        Artifact sources = createArtifact("sources", "jar");
+        Artifact testJar = createArtifact(null, "test-jar");
+        Dependency plainDependency = createDependency(null, "jar");
+        Dependency untypedDependency = createDependency(null, null);
+        Dependency sourcesDependency = createDependency("sources", null);
+        Dependency emptyClassifierDependency = createDependency("", "jar");
+        Dependency pomDependency = createDependency(null, "pom");
+
+        Map<Dependency, Artifact> lut = MavenOssInfoExtractor.createLookupTable(Arrays.asList(plainDependency,
+                untypedDependency, sourcesDependency, emptyClassifierDependency, pomDependency), Arrays.asList(
+                untyped, plain, sources, testJar));
+        assertThat(lut.get(plainDependency)).isSameAs(plain);
+        // a missing dependency type matches a missing type or 'jar'; the last matching artifact wins
+        assertThat(lut.get(untypedDependency)).isSameAs(plain);
+        assertThat(lut.get(sourcesDependency)).isSameAs(sources);
+        // a missing classifier only matches a missing one
+        assertThat(lut.containsKey(emptyClassifierDependency)).isFalse();
+        assertThat(lut.containsKey(pomDependency)).isFalse();
+
+        lut = MavenOssInfoExtractor.createLookupTable(Arrays.asList(untypedDependency), Arrays.asList(plain,
+                untyped));
+        assertThat(lut.get(untypedDependency)).isSameAs(untyped);
+    }
+
+    @Test
+    public void testLookupTableKeepsLastDuplicate()
+    {
+        Artifact first = createArtifact(null, "jar");
+        Artifact last = createArtifact(null, "jar");
+        Dependency dependency = createDependency(null, "jar");
+
+        Map<Dependency, Artifact> lut = MavenOssInfoExtractor.createLookupTable(Arrays.asList(dependency),
+                Arrays.asList(first, last));
+        assertThat(lut.get(dependency)).isSameAs(last);
+    }
+
+    private static void writePom(final File directory, final String artifactId, final String packaging,
+            final String... modules) throws IOException
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append("<project><modelVersion>4.0.0</modelVersion><groupId>test</groupId><artifactId>")
+                .append(artifactId).append("</artifactId><version>1.0</version><packaging>").append(packaging)
+                .append("</packaging><modules>");
+        for (String module : modules)
+        {
+            pom.append("<module>").append(module).append("</module>");
+        }
+        pom.append("</modules></project>");
+        FileUtils.writeStringToFile(new File(directory, "pom.xml"), pom.toString(), "UTF-8");
+    }
+
+    private static Artifact createArtifact(final String classifier, final String type)
+    {
+        Artifact artifact = mock(Artifact.class);
+        when(artifact.getGroupId()).thenReturn("org.whitesource");
+        when(artifact.getArtifactId()).thenReturn("library");
+        when(artifact.getVersion()).thenReturn("1.0");
+        when(artifact.getClassifier()).thenReturn(classifier);
+        when(artifact.getType()).thenReturn(type);
+        return artifact;
+    }
+
+    private static Dependency createDependency(final String classifier, final String type)
+    {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId("org.whitesource");
+        dependency.setArtifactId("library");
+        dependency.setVersion("1.0");
+        dependency.setClassifier(classifier);
+        dependency.setType(type);
+        return dependency;
+    }
 }
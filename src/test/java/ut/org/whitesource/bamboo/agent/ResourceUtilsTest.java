@@ -6,6 +6,7 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.whitesource.bamboo.agent.ResourceUtils;
 import org.whitesource.bamboo.agent.ResourceUtils.PathResolutionException;
+import org.whitesource.bamboo.agent.ResourceUtils.RelativePath;
 
 /**
  * NOTE: derived from http://stackoverflow.com/a/3054692/45773.
@@ -79,4 +80,38 @@ public class ResourceUtilsTest
             // expected exception
         }
     }
+
+    @Test
+    public void testRelativePathMatchesGetRelativePath()
+    {
+        RelativePath path = new RelativePath('/');
+        path.enter("stuff");
+        int length = path.append("xyz.dat");
+        assertEquals(ResourceUtils.getRelativePath("/var/data/stuff/xyz.dat", "/var/data/", "/"), path.toString());
+        path.truncate(length);
+        assertEquals("stuff/", path.toString());
+    }
+
+    @Test
+    public void testRelativePathEnterAndLeave()
+    {
+        RelativePath path = new RelativePath('\\');
+        for (int i = 0; i < 20; i++)
+        {
+            path.enter("d" + i);
+        }
+        assertEquals(20, path.getDepth());
+        for (int i = 0; i < 18; i++)
+        {
+            path.leave();
+        }
+        path.enter("Fonts");
+        int length = path.append("chs_boot.ttf");
+        assertEquals("d0\\d1\\Fonts\\chs_boot.ttf", path.toString());
+        path.truncate(length);
+        path.leave();
+        path.leave();
+        path.leave();
+        assertEquals(0, path.length());
+    }
 }
@@ -0,0 +1,92 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.bamboo.agent.ScanManifest;
+
+public class ScanManifestTest
+{
+    protected static final String SHA1 = "3f786850e387550fdab836ed7e6dc881de23001b";
+    protected static final String SCAN_KEY = "lib/*.jar|";
+    protected static final String REVISION = "dd8ff0d022ff0344b42bc9ff644464498d37d998";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File manifestFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        manifestFile = new File(folder.getRoot(), "manifests/checkout.bin");
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException
+    {
+        ScanManifest manifest = new ScanManifest(manifestFile);
+        manifest.update(createEntries(), SCAN_KEY, REVISION);
+        manifest.save();
+        assertThat(manifestFile).exists();
+
+        ScanManifest reloaded = new ScanManifest(manifestFile);
+        reloaded.load();
+        assertThat(reloaded.size()).isEqualTo(1);
+        assertThat(reloaded.getScanKey()).isEqualTo(SCAN_KEY);
+        assertThat(reloaded.getRevision()).isEqualTo(REVISION);
+        assertThat(reloaded.getPaths()).containsOnly("lib/a.jar");
+        assertThat(reloaded.get("lib/a.jar").getSha1()).isEqualTo(SHA1);
+        assertThat(reloaded.get("lib/a.jar").matches(2, 1000)).isTrue();
+    }
+
+    @Test
+    public void testUnknownRevisionIsNull() throws IOException
+    {
+        ScanManifest manifest = new ScanManifest(manifestFile);
+        manifest.update(createEntries(), SCAN_KEY, null);
+        manifest.save();
+
+        ScanManifest reloaded = new ScanManifest(manifestFile);
+        reloaded.load();
+        assertThat(reloaded.getRevision()).isNull();
+        assertThat(reloaded.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEntryMatchesSizeAndModificationTime()
+    {
+        ScanManifest.Entry entry = new ScanManifest.Entry(2, 1000, SHA1);
+        assertThat(entry.matches(2, 1000)).isTrue();
+        assertThat(entry.matches(3, 1000)).isFalse();
+        assertThat(entry.matches(2, 2000)).isFalse();
+    }
+
+    @Test
+    public void testUnreadableManifestIsEmpty() throws IOException
+    {
+        FileUtils.writeStringToFile(manifestFile, "garbage", "UTF-8");
+
+        ScanManifest manifest = new ScanManifest(manifestFile);
+        manifest.load();
+        assertThat(manifest.size()).isEqualTo(0);
+        assertThat(manifest.getScanKey()).isNull();
+        assertThat(manifest.getRevision()).isNull();
+    }
+
+    private Map<String, ScanManifest.Entry> createEntries()
+    {
+        Map<String, ScanManifest.Entry> entries = new HashMap<String, ScanManifest.Entry>();
+        entries.put("lib/a.jar", new ScanManifest.Entry(2, 1000, SHA1));
+        return entries;
+    }
+}
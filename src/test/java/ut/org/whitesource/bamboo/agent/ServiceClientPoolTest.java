@@ -0,0 +1,80 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.bamboo.agent.ServiceClientPool;
+import org.whitesource.bamboo.agent.ServiceSettings;
+
+public class ServiceClientPoolTest
+{
+    protected static final long IDLE_TIMEOUT = 60 * 1000L;
+    protected static final ServiceSettings DIRECT = new ServiceSettings("https://saas.whitesourcesoftware.com/agent",
+            null, 0, null, null);
+    protected static final ServiceSettings PROXIED = new ServiceSettings(
+            "https://saas.whitesourcesoftware.com/agent", "http://proxy", 8080, "user", "secret");
+
+    private ServiceClientPool pool;
+
+    @Before
+    public void setUp()
+    {
+        pool = new ServiceClientPool(IDLE_TIMEOUT);
+    }
+
+    @Test
+    public void testCheckinReusesClient()
+    {
+        WhitesourceService service = pool.checkout(DIRECT);
+        assertThat(pool.getLeasedCount()).isEqualTo(1);
+        pool.checkin(service);
+        assertThat(pool.getLeasedCount()).isEqualTo(0);
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+
+        assertThat(pool.checkout(DIRECT)).isSameAs(service);
+        assertThat(pool.getIdleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentCheckoutsGetDistinctClients()
+    {
+        WhitesourceService first = pool.checkout(DIRECT);
+        WhitesourceService second = pool.checkout(DIRECT);
+        assertThat(second).isNotSameAs(first);
+        assertThat(pool.getLeasedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testClientsAreKeyedBySettings()
+    {
+        WhitesourceService service = pool.checkout(DIRECT);
+        pool.checkin(service);
+
+        assertThat(pool.checkout(PROXIED)).isNotSameAs(service);
+        assertThat(pool.checkout(new ServiceSettings(DIRECT.getServiceUrl(), null, 0, null, null))).isSameAs(service);
+    }
+
+    @Test
+    public void testInvalidatedClientIsNotReused()
+    {
+        WhitesourceService service = pool.checkout(DIRECT);
+        pool.invalidate(service);
+        assertThat(pool.getLeasedCount()).isEqualTo(0);
+        assertThat(pool.getIdleCount()).isEqualTo(0);
+        assertThat(pool.checkout(DIRECT)).isNotSameAs(service);
+    }
+
+    @Test
+    public void testEvictIdle()
+    {
+        pool.checkin(pool.checkout(DIRECT));
+        pool.evictIdle(System.currentTimeMillis());
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+
+        pool.evictIdle(System.currentTimeMillis() + IDLE_TIMEOUT);
+        assertThat(pool.getIdleCount()).isEqualTo(0);
+        pool.shutdown();
+    }
+}
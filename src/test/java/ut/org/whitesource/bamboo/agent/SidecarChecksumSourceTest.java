@@ -0,0 +1,82 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.ChecksumUtils;
+import org.whitesource.bamboo.agent.ChecksumSource;
+import org.whitesource.bamboo.agent.SidecarChecksumSource;
+
+public class SidecarChecksumSourceTest
+{
+    protected static final String SHA1 = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File artifact;
+    private File sidecar;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        artifact = folder.newFile("dependency-1.0.jar");
+        FileUtils.writeStringToFile(artifact, "content", "UTF-8");
+        sidecar = new File(artifact.getPath() + SidecarChecksumSource.SIDECAR_EXTENSION);
+    }
+
+    @Test
+    public void testParseSidecar()
+    {
+        assertThat(SidecarChecksumSource.parseSidecar(SHA1 + "\n")).isEqualTo(SHA1);
+        assertThat(SidecarChecksumSource.parseSidecar(SHA1.toUpperCase() + "  dependency-1.0.jar")).isEqualTo(SHA1);
+        assertThat(SidecarChecksumSource.parseSidecar("SHA1(dependency-1.0.jar)= " + SHA1)).isEqualTo(SHA1);
+        assertThat(SidecarChecksumSource.parseSidecar("")).isNull();
+        assertThat(SidecarChecksumSource.parseSidecar(SHA1.substring(1))).isNull();
+        assertThat(SidecarChecksumSource.parseSidecar(SHA1.replace('a', 'x'))).isNull();
+    }
+
+    @Test
+    public void testTrustedSidecar() throws IOException
+    {
+        FileUtils.writeStringToFile(sidecar, SHA1, "US-ASCII");
+        assertThat(new SidecarChecksumSource(null).getSha1(artifact)).isEqualTo(SHA1);
+    }
+
+    @Test
+    public void testMissingSidecar() throws IOException
+    {
+        assertThat(new SidecarChecksumSource(null).getSha1(artifact)).isNull();
+    }
+
+    @Test
+    public void testOutdatedSidecar() throws IOException
+    {
+        FileUtils.writeStringToFile(sidecar, SHA1, "US-ASCII");
+        assertThat(sidecar.setLastModified(artifact.lastModified() - 60000L)).isTrue();
+        assertThat(new SidecarChecksumSource(null).getSha1(artifact)).isNull();
+    }
+
+    @Test
+    public void testVerifiedSidecarMismatch() throws IOException
+    {
+        FileUtils.writeStringToFile(sidecar, SHA1, "US-ASCII");
+        ChecksumSource calculating = new ChecksumSource()
+        {
+            @Override
+            public String getSha1(final File file) throws IOException
+            {
+                return ChecksumUtils.calculateSHA1(file);
+            }
+        };
+        assertThat(new SidecarChecksumSource(calculating).getSha1(artifact)).isEqualTo(
+                ChecksumUtils.calculateSHA1(artifact));
+    }
+}
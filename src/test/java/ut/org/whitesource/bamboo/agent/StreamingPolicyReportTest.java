@@ -0,0 +1,120 @@
+package ut.org.whitesource.bamboo.agent;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.dispatch.CheckPoliciesResult;
+import org.whitesource.agent.api.model.PolicyCheckResourceNode;
+import org.whitesource.agent.api.model.RequestPolicyInfo;
+import org.whitesource.agent.api.model.ResourceInfo;
+import org.whitesource.bamboo.agent.StreamingPolicyReport;
+
+public class StreamingPolicyReportTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ResourceInfo resource;
+    private StreamingPolicyReport report;
+
+    @Before
+    public void setUp()
+    {
+        resource = mock(ResourceInfo.class);
+        when(resource.getDisplayName()).thenReturn("commons-\"lang\" <2.6>");
+        when(resource.getLicenses()).thenReturn(Arrays.asList("Apache 2.0"));
+        RequestPolicyInfo policy = mock(RequestPolicyInfo.class);
+        when(policy.getDisplayName()).thenReturn("No GPL");
+        when(policy.getActionType()).thenReturn("Reject");
+
+        PolicyCheckResourceNode dependency = mock(PolicyCheckResourceNode.class);
+        when(dependency.getResource()).thenReturn(resource);
+        when(dependency.getPolicy()).thenReturn(policy);
+        when(dependency.hasRejections()).thenReturn(true);
+        PolicyCheckResourceNode project = mock(PolicyCheckResourceNode.class);
+        when(project.getChildren()).thenReturn(Collections.singletonList(dependency));
+        when(project.hasRejections()).thenReturn(true);
+
+        CheckPoliciesResult result = mock(CheckPoliciesResult.class);
+        when(result.getOrganization()).thenReturn("White Source");
+        when(result.hasRejections()).thenReturn(true);
+        when(result.getNewProjects()).thenReturn(Collections.singletonMap("module", project));
+
+        report = new StreamingPolicyReport(result, "Plan", "PROJ-PLAN-1");
+    }
+
+    @Test
+    public void testWriteJson() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        report.writeJson(out);
+
+        assertThat(out.toString()).contains("\"organization\":\"White Source\"").contains("\"hasRejections\":true")
+                .contains("\"existingProjects\":{}").contains("\"resource\":\"commons-\\\"lang\\\" <2.6>\"")
+                .contains("\"licenses\":[\"Apache 2.0\"]").contains("\"action\":\"Reject\"");
+    }
+
+    @Test
+    public void testWriteHtml() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        report.writeHtml(out);
+
+        assertThat(out.toString()).contains("<h3>module</h3>").contains(
+                "<li class=\"rejected\">commons-&quot;lang&quot; &lt;2.6&gt; (Apache 2.0) - Reject by No GPL");
+    }
+
+    @Test
+    public void testWriteHtmlEscapesApostrophes() throws IOException
+    {
+        when(resource.getDisplayName()).thenReturn("o'reilly");
+        StringWriter out = new StringWriter();
+        report.writeHtml(out);
+
+        assertThat(out.toString()).contains("o&#39;reilly").doesNotContain("o'reilly");
+    }
+
+    @Test
+    public void testWriteHtmlLinksOnlyToWebPages() throws IOException
+    {
+        when(resource.getLink()).thenReturn("https://example.com/lang?a=1&b=2");
+        StringWriter out = new StringWriter();
+        report.writeHtml(out);
+        assertThat(out.toString()).contains("<a href=\"https://example.com/lang?a=1&amp;b=2\">");
+
+        when(resource.getLink()).thenReturn("javascript:alert(document.cookie)");
+        out = new StringWriter();
+        report.writeHtml(out);
+        assertThat(out.toString()).doesNotContain("<a href").doesNotContain("javascript:");
+    }
+
+    @Test
+    public void testGenerate() throws IOException
+    {
+        File archive = report.generate(new File(folder.getRoot(), "build"));
+        assertThat(archive.getName()).isEqualTo(StreamingPolicyReport.ARCHIVE_NAME);
+
+        ZipFile zip = new ZipFile(archive);
+        try
+        {
+            assertThat(zip.getEntry(StreamingPolicyReport.HTML_ENTRY)).isNotNull();
+            assertThat(zip.getEntry(StreamingPolicyReport.JSON_ENTRY)).isNotNull();
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ut.org.whitesource.bamboo.plugins;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.bamboo.plugins.BatchedInventoryUpdater;
+
+public class BatchedInventoryUpdaterTest
+{
+    @Test
+    public void testPartitionBySize()
+    {
+        List<AgentProjectInfo> projectInfos = createProjectInfos(4, 3, 2, 0, 5);
+        List<List<AgentProjectInfo>> batches = BatchedInventoryUpdater.partition(projectInfos, 6);
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0)).containsExactly(projectInfos.get(0));
+        assertThat(batches.get(1)).containsExactly(projectInfos.get(1), projectInfos.get(2), projectInfos.get(3));
+        assertThat(batches.get(2)).containsExactly(projectInfos.get(4));
+    }
+
+    @Test
+    public void testPartitionKeepsOversizedProject()
+    {
+        List<AgentProjectInfo> projectInfos = createProjectInfos(1, 10, 1);
+        List<List<AgentProjectInfo>> batches = BatchedInventoryUpdater.partition(projectInfos, 5);
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(1)).containsExactly(projectInfos.get(1));
+    }
+
+    @Test
+    public void testPartitionUnbounded()
+    {
+        List<AgentProjectInfo> projectInfos = createProjectInfos(4, 3, 2);
+        List<List<AgentProjectInfo>> batches = BatchedInventoryUpdater.partition(projectInfos, 0);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).isEqualTo(projectInfos);
+        assertThat(BatchedInventoryUpdater.partition(new ArrayList<AgentProjectInfo>(), 0)).isEmpty();
+    }
+
+    private List<AgentProjectInfo> createProjectInfos(final int... dependencyCounts)
+    {
+        List<AgentProjectInfo> projectInfos = new ArrayList<AgentProjectInfo>();
+        for (int dependencyCount : dependencyCounts)
+        {
+            AgentProjectInfo projectInfo = new AgentProjectInfo();
+            for (int i = 0; i < dependencyCount; i++)
+            {
+                projectInfo.getDependencies().add(new DependencyInfo());
+            }
+            projectInfos.add(projectInfo);
+        }
+        return projectInfos;
+    }
+}
@@ -0,0 +1,60 @@
+package ut.org.whitesource.bamboo.plugins;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.bamboo.plugins.BatchedInventoryUpdater;
+import org.whitesource.bamboo.plugins.PipelinedInventoryUploader;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+public class PipelinedInventoryUploaderTest
+{
+    protected static final String API_KEY = "TestApiKey";
+    protected static final int PROJECTS = 2 * PipelinedInventoryUploader.QUEUE_CAPACITY;
+
+    @Test(timeout = 30000)
+    public void testDeadUploaderDoesNotBlockExtraction() throws InterruptedException
+    {
+        BuildLogger buildLogger = mock(BuildLogger.class);
+        BatchedInventoryUpdater updater = new BatchedInventoryUpdater(null, buildLogger, 1)
+        {
+            @Override
+            public List<UpdateInventoryResult> update(final String apiKey,
+                    final Collection<AgentProjectInfo> projectInfos)
+            {
+                throw new OutOfMemoryError("simulated");
+            }
+        };
+        PipelinedInventoryUploader uploader = new PipelinedInventoryUploader(updater, buildLogger, API_KEY, 1);
+        uploader.start();
+
+        List<AgentProjectInfo> projectInfos = new ArrayList<AgentProjectInfo>();
+        for (int i = 0; i < PROJECTS; i++)
+        {
+            AgentProjectInfo projectInfo = new AgentProjectInfo();
+            projectInfo.getDependencies().add(new DependencyInfo());
+            projectInfos.add(projectInfo);
+            uploader.projectInfoExtracted(projectInfo);
+        }
+        uploader.finish();
+
+        assertThat(uploader.getProjects()).isEqualTo(PROJECTS);
+        assertThat(uploader.getResults()).isEmpty();
+        List<AgentProjectInfo> failed = new ArrayList<AgentProjectInfo>();
+        for (List<AgentProjectInfo> batch : uploader.getFailedProjects())
+        {
+            failed.addAll(batch);
+        }
+        assertThat(failed).containsOnly(projectInfos.toArray());
+        assertThat(failed).hasSize(PROJECTS);
+    }
+}
@@ -0,0 +1,227 @@
+package ut.org.whitesource.bamboo.plugins;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.bamboo.agent.CircuitBreaker;
+import org.whitesource.bamboo.agent.ServiceClientPool;
+import org.whitesource.bamboo.agent.ServiceRejectedException;
+import org.whitesource.bamboo.agent.ServiceSettings;
+import org.whitesource.bamboo.plugins.ResilientInvoker;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+public class ResilientInvokerTest
+{
+    protected static final ServiceSettings SETTINGS = new ServiceSettings("http://localhost:1/agent", null, 0, null,
+            null);
+
+    private ServiceClientPool clientPool;
+    private BuildLogger buildLogger;
+
+    @Before
+    public void setUp()
+    {
+        clientPool = new ServiceClientPool(ServiceClientPool.DEFAULT_IDLE_TIMEOUT);
+        buildLogger = mock(BuildLogger.class);
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() throws WssServiceException
+    {
+        CircuitBreaker breaker = new CircuitBreaker(10, 60000L);
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, breaker, buildLogger, 3, 1L, 10L, 0L);
+        FailingCall call = new FailingCall(2);
+
+        assertThat(invoker.invoke("test", call)).isEqualTo("done");
+        assertThat(call.calls.get()).isEqualTo(3);
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(clientPool.getLeasedCount()).isEqualTo(0);
+        assertThat(clientPool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts()
+    {
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, new CircuitBreaker(10, 60000L),
+                buildLogger, 2, 1L, 10L, 0L);
+        FailingCall call = new FailingCall(5);
+        try
+        {
+            invoker.invoke("test", call);
+            fail("expected a WssServiceException");
+        }
+        catch (WssServiceException e)
+        {
+            assertThat(e.getMessage()).isEqualTo("failure 2");
+        }
+        assertThat(call.calls.get()).isEqualTo(2);
+        assertThat(clientPool.getIdleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testOpenCircuitFailsFast()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000L);
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, breaker, buildLogger, 5, 1L, 10L, 0L);
+        FailingCall call = new FailingCall(5);
+        try
+        {
+            invoker.invoke("test", call);
+            fail("expected a WssServiceException");
+        }
+        catch (WssServiceException e)
+        {
+            assertThat(breaker.isOpen()).isTrue();
+        }
+        assertThat(call.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRejectedRequestFailsRightAway()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000L);
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, breaker, buildLogger, 3, 1L, 10L, 0L);
+        final AtomicInteger calls = new AtomicInteger();
+        try
+        {
+            invoker.invoke("test", new ResilientInvoker.ServiceCall<String>()
+            {
+                @Override
+                public String call(final WhitesourceService service) throws WssServiceException
+                {
+                    calls.incrementAndGet();
+                    throw new ServiceRejectedException("Invalid API key", null);
+                }
+            });
+            fail("expected a WssServiceException");
+        }
+        catch (WssServiceException e)
+        {
+            assertThat(e.getCause()).isInstanceOf(ServiceRejectedException.class);
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    @Test
+    public void testErrorDuringTrialDoesNotKeepCircuitOpen() throws WssServiceException
+    {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0L);
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, breaker, buildLogger, 1, 1L, 10L, 0L);
+        try
+        {
+            invoker.invoke("test", new FailingCall(1));
+            fail("expected a WssServiceException");
+        }
+        catch (WssServiceException e)
+        {
+            assertThat(breaker.isOpen()).isTrue();
+        }
+
+        try
+        {
+            invoker.invoke("test", new ResilientInvoker.ServiceCall<String>()
+            {
+                @Override
+                public String call(final WhitesourceService service) throws WssServiceException
+                {
+                    throw new NoClassDefFoundError("org/whitesource/Missing");
+                }
+            });
+            fail("expected a NoClassDefFoundError");
+        }
+        catch (NoClassDefFoundError e)
+        {
+            // thrown during the trial call
+        }
+
+        assertThat(invoker.invoke("test", new FailingCall(0))).isEqualTo("done");
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    @Test
+    public void testIsTransient()
+    {
+        assertThat(ResilientInvoker.isTransient(new WssServiceException("Connection reset"))).isTrue();
+        assertThat(ResilientInvoker.isTransient(new WssServiceException("Connection refused", new IOException(
+                "Connection refused")))).isTrue();
+        assertThat(ResilientInvoker.isTransient(new WssServiceException("Invalid API key",
+                new ServiceRejectedException("Invalid API key", new IOException("Invalid API key"))))).isFalse();
+        assertThat(ResilientInvoker.isTransient(new WssServiceException("Bug", new NullPointerException())))
+                .isFalse();
+    }
+
+    @Test
+    public void testTimeout()
+    {
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, new CircuitBreaker(10, 60000L),
+                buildLogger, 1, 1L, 10L, 100L);
+        final long startTime = System.currentTimeMillis();
+        try
+        {
+            invoker.invoke("test", new ResilientInvoker.ServiceCall<String>()
+            {
+                @Override
+                public String call(final WhitesourceService service) throws WssServiceException
+                {
+                    try
+                    {
+                        Thread.sleep(10000L);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "late";
+                }
+            });
+            fail("expected a WssServiceException");
+        }
+        catch (WssServiceException e)
+        {
+            assertThat(System.currentTimeMillis() - startTime).isLessThan(5000L);
+        }
+        assertThat(clientPool.getIdleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBackoff()
+    {
+        ResilientInvoker invoker = new ResilientInvoker(clientPool, SETTINGS, new CircuitBreaker(10, 60000L),
+                buildLogger, 5, 1000L, 5000L, 0L);
+        assertThat(invoker.getBackoff(1)).isGreaterThanOrEqualTo(500L).isLessThanOrEqualTo(1000L);
+        assertThat(invoker.getBackoff(2)).isGreaterThanOrEqualTo(1000L).isLessThanOrEqualTo(2000L);
+        assertThat(invoker.getBackoff(10)).isGreaterThanOrEqualTo(2500L).isLessThanOrEqualTo(5000L);
+    }
+
+    private static class FailingCall implements ResilientInvoker.ServiceCall<String>
+    {
+        private final int failures;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private FailingCall(final int failures)
+        {
+            this.failures = failures;
+        }
+
+        @Override
+        public String call(final WhitesourceService service) throws WssServiceException
+        {
+            final int call = calls.incrementAndGet();
+            if (call <= failures)
+            {
+                throw new WssServiceException("failure " + call);
+            }
+            return "done";
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ut.org.whitesource.bamboo.plugins;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.client.WhitesourceService;
+import org.whitesource.agent.client.WssServiceException;
+import org.whitesource.bamboo.agent.CircuitBreaker;
+import org.whitesource.bamboo.agent.InventorySpool;
+import org.whitesource.bamboo.agent.ServiceRejectedException;
+import org.whitesource.bamboo.agent.ServiceSettings;
+import org.whitesource.bamboo.plugins.SpoolForwarder;
+
+public class SpoolForwarderTest
+{
+    protected static final String API_KEY = "TestApiKey";
+    protected static final ServiceSettings SETTINGS = new ServiceSettings("http://localhost:1/spool-forwarder-test",
+            null, 0, null, null);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InventorySpool spool;
+    private final Set<String> failingTokens = new HashSet<String>();
+    private final Set<String> rejectedTokens = new HashSet<String>();
+    private final List<String> sentTokens = new ArrayList<String>();
+
+    @Before
+    public void setUp()
+    {
+        spool = new InventorySpool(new File(folder.getRoot(), InventorySpool.SPOOL_DIRECTORY));
+    }
+
+    @Test
+    public void testFailureHoldsBackSameProjectOnly() throws IOException
+    {
+        File first = spool.spool(API_KEY, Arrays.asList(createProjectInfo("a")));
+        spool.spool(API_KEY, Arrays.asList(createProjectInfo("b")));
+        File third = spool.spool(API_KEY, Arrays.asList(createProjectInfo("a"), createProjectInfo("c")));
+        File fourth = spool.spool("OtherApiKey", Arrays.asList(createProjectInfo("a")));
+        failingTokens.add("a");
+
+        assertThat(createForwarder(10).forward(SETTINGS)).isEqualTo(2);
+        assertThat(sentTokens).containsExactly("a", "b", "a");
+        assertThat(spool.list()).containsExactly(first, third);
+        assertThat(fourth).doesNotExist();
+    }
+
+    @Test
+    public void testRejectedUpdateIsSetAside() throws IOException
+    {
+        spool.spool(API_KEY, Arrays.asList(createProjectInfo("a")));
+        spool.spool(API_KEY, Arrays.asList(createProjectInfo("a")));
+        rejectedTokens.add("a");
+
+        assertThat(createForwarder(10).forward(SETTINGS)).isEqualTo(0);
+        assertThat(sentTokens).containsExactly("a", "a");
+        assertThat(spool.getDirectory().list()).hasSize(2);
+    }
+
+    @Test
+    public void testUpdateIsSetAsideAfterMaxAttempts() throws IOException
+    {
+        spool.spool(API_KEY, Arrays.asList(createProjectInfo("a")));
+        failingTokens.add("a");
+
+        SpoolForwarder forwarder = createForwarder(2);
+        assertThat(forwarder.forward(SETTINGS)).isEqualTo(1);
+        assertThat(forwarder.forward(SETTINGS)).isEqualTo(0);
+        assertThat(sentTokens).containsExactly("a", "a");
+    }
+
+    @Test
+    public void testFailuresDontOpenSharedCircuit() throws IOException
+    {
+        for (String token : Arrays.asList("a", "b", "c", "d", "e", "f", "g"))
+        {
+            spool.spool(API_KEY, Arrays.asList(createProjectInfo(token)));
+            failingTokens.add(token);
+        }
+
+        assertThat(createForwarder(10).forward(SETTINGS)).isEqualTo(7);
+        assertThat(sentTokens).hasSize(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+        assertThat(CircuitBreaker.getShared(SETTINGS.getServiceUrl()).isOpen()).isFalse();
+    }
+
+    @Test
+    public void testSupersede() throws IOException
+    {
+        File first = spool.spool(API_KEY, Arrays.asList(createProjectInfo("a")));
+        File second = spool.spool(API_KEY, Arrays.asList(createProjectInfo("a"), createProjectInfo("b")));
+        File third = spool.spool("OtherApiKey", Arrays.asList(createProjectInfo("a")));
+
+        assertThat(createForwarder(10).supersede(API_KEY, Arrays.asList(createProjectInfo("a")))).isEqualTo(2);
+        assertThat(spool.list()).containsExactly(second, third);
+        assertThat(first).doesNotExist();
+        assertThat(spool.read(second).getProjectInfos()).hasSize(1);
+        assertThat(spool.read(second).getProjectInfos().get(0).getProjectToken()).isEqualTo("b");
+        assertThat(spool.read(third).getProjectInfos()).hasSize(1);
+    }
+
+    private SpoolForwarder createForwarder(final int maxAttempts)
+    {
+        return new SpoolForwarder(spool, SpoolForwarder.DEFAULT_RETRY_DELAY, maxAttempts)
+        {
+            @Override
+            protected UpdateInventoryResult send(final WhitesourceService service,
+                    final InventorySpool.SpooledUpdate update) throws WssServiceException
+            {
+                for (AgentProjectInfo projectInfo : update.getProjectInfos())
+                {
+                    sentTokens.add(projectInfo.getProjectToken());
+                }
+                for (AgentProjectInfo projectInfo : update.getProjectInfos())
+                {
+                    if (!API_KEY.equals(update.getApiKey()))
+                    {
+                        continue;
+                    }
+                    if (rejectedTokens.contains(projectInfo.getProjectToken()))
+                    {
+                        throw new ServiceRejectedException("Rejected", null);
+                    }
+                    if (failingTokens.contains(projectInfo.getProjectToken()))
+                    {
+                        throw new WssServiceException("Connection reset");
+                    }
+                }
+                return mock(UpdateInventoryResult.class);
+            }
+        };
+    }
+
+    private AgentProjectInfo createProjectInfo(final String projectToken)
+    {
+        AgentProjectInfo projectInfo = new AgentProjectInfo();
+        projectInfo.setProjectToken(projectToken);
+        return projectInfo;
+    }
+}